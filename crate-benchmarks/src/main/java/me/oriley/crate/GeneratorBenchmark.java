@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate;
+
+import com.squareup.javapoet.JavaFile;
+import me.oriley.crate.CrateGenerator.FolderNode;
+import me.oriley.crate.SyntheticAssets.Mix;
+import me.oriley.crate.SyntheticAssets.Shape;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks each phase of the generator against synthetic asset trees: scanning (which includes probing every file),
+ * emitting the dictionary with JavaPoet and writing it out, plus the whole build. Run with the {@code gc} profiler
+ * (as the {@code jmh} Gradle task does) to report allocation rates. Scanning allocates on its own pool threads, which
+ * only show up in the heap churn figures rather than the per thread allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GeneratorBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int files;
+
+    @Param({"MIXED", "IMAGES", "GZIPPED"})
+    public String mix;
+
+    @Param({"FLAT", "NESTED"})
+    public String shape;
+
+    private File mAssetDir;
+
+    private File mOutputDir;
+
+    private CrateGenerator mGenerator;
+
+    private FolderNode mRootNode;
+
+    private JavaFile mJavaFile;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mAssetDir = SyntheticAssets.getTree(files, Mix.valueOf(mix), Shape.valueOf(shape));
+        mOutputDir = new File(mAssetDir.getParentFile(), mAssetDir.getName() + "_output");
+
+        // No probe cache or shared output, so every iteration does the full amount of work
+        mGenerator = new CrateGenerator(mOutputDir.getPath(), mAssetDir.getPath(), false, 0, null, null, false, false,
+                null, null, null);
+        mRootNode = mGenerator.scanFolders(mAssetDir, mAssetDir.getPath());
+        mJavaFile = mGenerator.brewJava(mRootNode, CrateGenerator.class.getPackage().getName());
+    }
+
+    @Benchmark
+    public Object scan() {
+        return mGenerator.scanFolders(mAssetDir, mAssetDir.getPath());
+    }
+
+    @Benchmark
+    public JavaFile emit() {
+        return mGenerator.brewJava(mRootNode, CrateGenerator.class.getPackage().getName());
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        mJavaFile.writeTo(mOutputDir);
+    }
+
+    @Benchmark
+    public void build() {
+        mGenerator.buildCrate();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate;
+
+import me.oriley.crate.SyntheticAssets.Type;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks probing a single asset of each type, without the probe cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProbeBenchmark {
+
+    @Param({"PNG", "JPEG", "TTF", "SVG", "MP4", "GZIP_PNG", "GZIP_SVG"})
+    public String type;
+
+    private File mFile;
+
+    private CrateGenerator mGenerator;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mFile = SyntheticAssets.getSingleFile(Type.valueOf(type));
+        File assetDir = mFile.getParentFile();
+        mGenerator = new CrateGenerator(new File(assetDir, "output").getPath(), assetDir.getPath(), false, 1, null,
+                null, false, false, null, null, null);
+    }
+
+    @Benchmark
+    public Asset probe() {
+        return mGenerator.probe(mFile);
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate;
+
+import android.support.annotation.NonNull;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates asset trees for the benchmarks, so no real assets need to be checked in. Each type has a few templates of
+ * different dimensions which are cycled through, as the probes only care about headers rather than unique content.
+ * Trees are kept between runs, as writing 100k files takes far longer than any single benchmark.
+ */
+final class SyntheticAssets {
+
+    enum Type {
+        PNG("png"), JPEG("jpg"), TTF("ttf"), SVG("svg"), MP4("mp4"), GZIP_PNG("png.gz"), GZIP_SVG("svg.gz");
+
+        @NonNull
+        final String mExtension;
+
+        Type(@NonNull String extension) {
+            mExtension = extension;
+        }
+    }
+
+    enum Mix {
+        MIXED(Type.values()),
+        IMAGES(Type.PNG, Type.JPEG),
+        GZIPPED(Type.GZIP_PNG, Type.GZIP_SVG);
+
+        @NonNull
+        final Type[] mTypes;
+
+        Mix(@NonNull Type... types) {
+            mTypes = types;
+        }
+    }
+
+    enum Shape {
+        // Every file in the root folder
+        FLAT,
+        // Files spread over 1024 leaf folders, 5 levels deep
+        NESTED
+    }
+
+    private static final String DIR_PROPERTY = "crate.benchmark.dir";
+
+    private static final String COMPLETE_MARKER = ".complete";
+
+    private static final int TEMPLATES = 4;
+
+    private static final int NESTED_DEPTH = 5;
+
+    private static final int NESTED_FAN_OUT = 4;
+
+    private static final byte[][][] TEMPLATE_CACHE = new byte[Type.values().length][][];
+
+    private SyntheticAssets() {
+        throw new IllegalAccessError("no instances");
+    }
+
+    /**
+     * @return root of a tree with the given number of files, generating it if it doesn't already exist
+     */
+    @NonNull
+    static synchronized File getTree(int files, @NonNull Mix mix, @NonNull Shape shape) throws IOException {
+        File root = new File(getBaseDir(), "tree_" + files + "_" + mix.name().toLowerCase() + "_"
+                + shape.name().toLowerCase());
+        File marker = new File(getBaseDir(), root.getName() + COMPLETE_MARKER);
+        if (marker.isFile()) {
+            return root;
+        }
+
+        delete(root);
+        for (int i = 0; i < files; i++) {
+            Type type = mix.mTypes[i % mix.mTypes.length];
+            File dir = shape == Shape.NESTED ? new File(root, getNestedPath(i)) : root;
+            writeFile(new File(dir, "asset_" + i + "." + type.mExtension), getTemplate(type, i % TEMPLATES));
+        }
+
+        if (!marker.createNewFile()) {
+            throw new IOException("Unable to create " + marker.getPath());
+        }
+        return root;
+    }
+
+    /**
+     * @return a folder containing a single file of the given type
+     */
+    @NonNull
+    static synchronized File getSingleFile(@NonNull Type type) throws IOException {
+        File file = new File(new File(getBaseDir(), "single_" + type.name().toLowerCase()), "asset." + type.mExtension);
+        writeFile(file, getTemplate(type, 0));
+        return file;
+    }
+
+    @NonNull
+    private static File getBaseDir() {
+        String dir = System.getProperty(DIR_PROPERTY);
+        return dir != null ? new File(dir) : new File(System.getProperty("java.io.tmpdir"), "crate-benchmarks");
+    }
+
+    @NonNull
+    private static String getNestedPath(int index) {
+        StringBuilder builder = new StringBuilder();
+        int remaining = index;
+        for (int level = 0; level < NESTED_DEPTH; level++) {
+            builder.append("level").append(level).append('_').append(remaining % NESTED_FAN_OUT).append('/');
+            remaining /= NESTED_FAN_OUT;
+        }
+        return builder.toString();
+    }
+
+    @NonNull
+    private static byte[] getTemplate(@NonNull Type type, int variant) throws IOException {
+        byte[][] templates = TEMPLATE_CACHE[type.ordinal()];
+        if (templates == null) {
+            templates = new byte[TEMPLATES][];
+            for (int i = 0; i < TEMPLATES; i++) {
+                templates[i] = createContent(type, 16 << i, 9 << i);
+            }
+            TEMPLATE_CACHE[type.ordinal()] = templates;
+        }
+        return templates[variant];
+    }
+
+    @NonNull
+    private static byte[] createContent(@NonNull Type type, int width, int height) throws IOException {
+        switch (type) {
+            case PNG:
+                return createImage("png", width, height);
+            case JPEG:
+                return createImage("jpg", width, height);
+            case TTF:
+                return createFont("Synthetic " + width, 100 * (width % 9 + 1), width * 64);
+            case SVG:
+                return createSvg(width, height);
+            case MP4:
+                return createMp4(width, height);
+            case GZIP_PNG:
+                return gzip(createImage("png", width, height));
+            case GZIP_SVG:
+                return gzip(createSvg(width, height));
+            default:
+                throw new IllegalArgumentException("Unknown type " + type);
+        }
+    }
+
+    @NonNull
+    private static byte[] createImage(@NonNull String format, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, x * 0x010203 ^ y * 0x030201);
+            }
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, format, output)) {
+            throw new IOException("No ImageIO writer for " + format);
+        }
+        return output.toByteArray();
+    }
+
+    @NonNull
+    private static byte[] createSvg(int width, int height) {
+        String svg = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + width + "\" height=\"" + height + "\">\n" +
+                "    <rect x=\"0\" y=\"0\" width=\"" + width + "\" height=\"" + height + "\" fill=\"#FF4081\"/>\n" +
+                "</svg>\n";
+        return svg.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds a TrueType font with just the tables the generator reads (no glyph data).
+     */
+    @NonNull
+    private static byte[] createFont(@NonNull String familyName, int weight, int unitsPerEm) {
+        ByteBuffer head = ByteBuffer.allocate(54);
+        head.putInt(0, 0x00010000);
+        head.putShort(18, (short) unitsPerEm);
+
+        ByteBuffer hhea = ByteBuffer.allocate(36);
+        hhea.putInt(0, 0x00010000);
+        hhea.putShort(4, (short) (unitsPerEm * 4 / 5));
+        hhea.putShort(6, (short) -(unitsPerEm / 5));
+
+        ByteBuffer maxp = ByteBuffer.allocate(6);
+        maxp.putInt(0, 0x00005000);
+        maxp.putShort(4, (short) 256);
+
+        ByteBuffer os2 = ByteBuffer.allocate(78);
+        os2.putShort(4, (short) weight);
+
+        byte[] family = familyName.getBytes(StandardCharsets.UTF_16BE);
+        byte[] full = (familyName + " Regular").getBytes(StandardCharsets.UTF_16BE);
+        ByteBuffer name = ByteBuffer.allocate(6 + 2 * 12 + family.length + full.length);
+        name.putShort((short) 0).putShort((short) 2).putShort((short) (6 + 2 * 12));
+        name.putShort((short) 3).putShort((short) 1).putShort((short) 0x409).putShort((short) 1)
+                .putShort((short) family.length).putShort((short) 0);
+        name.putShort((short) 3).putShort((short) 1).putShort((short) 0x409).putShort((short) 4)
+                .putShort((short) full.length).putShort((short) family.length);
+        name.put(family).put(full);
+
+        String[] tags = {"OS/2", "head", "hhea", "maxp", "name"};
+        ByteBuffer[] tables = {os2, head, hhea, maxp, name};
+
+        int offset = 12 + tables.length * 16;
+        int size = offset;
+        for (ByteBuffer table : tables) {
+            size += (table.capacity() + 3) & ~3;
+        }
+
+        ByteBuffer font = ByteBuffer.allocate(size);
+        font.putInt(0x00010000).putShort((short) tables.length).putShort((short) 64).putShort((short) 2)
+                .putShort((short) 16);
+        for (int i = 0; i < tables.length; i++) {
+            font.put(tags[i].getBytes(StandardCharsets.US_ASCII)).putInt(0).putInt(offset)
+                    .putInt(tables[i].capacity());
+            offset += (tables[i].capacity() + 3) & ~3;
+        }
+        for (ByteBuffer table : tables) {
+            font.put(table.array());
+            font.position((font.position() + 3) & ~3);
+        }
+        return font.array();
+    }
+
+    /**
+     * Builds an MP4 with a single video track of 30 samples at 30fps, and a little (meaningless) media data.
+     */
+    @NonNull
+    private static byte[] createMp4(int width, int height) {
+        ByteBuffer mvhd = ByteBuffer.allocate(100);
+        mvhd.putInt(12, 1000).putInt(16, 1000).putInt(20, 0x00010000).putShort(24, (short) 0x0100);
+        putIdentityMatrix(mvhd, 36);
+        mvhd.putInt(96, 2);
+
+        ByteBuffer tkhd = ByteBuffer.allocate(84);
+        tkhd.putInt(0, 0x00000003).putInt(12, 1).putInt(20, 1000);
+        putIdentityMatrix(tkhd, 40);
+        tkhd.putInt(76, width << 16).putInt(80, height << 16);
+
+        ByteBuffer mdhd = ByteBuffer.allocate(24);
+        mdhd.putInt(12, 30000).putInt(16, 30000);
+
+        ByteBuffer hdlr = ByteBuffer.allocate(25);
+        hdlr.put(8, (byte) 'v').put(9, (byte) 'i').put(10, (byte) 'd').put(11, (byte) 'e');
+
+        ByteBuffer stsd = ByteBuffer.allocate(8 + 86);
+        stsd.putInt(4, 1).putInt(8, 86).put(12, (byte) 'a').put(13, (byte) 'v').put(14, (byte) 'c')
+                .put(15, (byte) '1').putShort(22, (short) 1).putShort(40, (short) width)
+                .putShort(42, (short) height).putInt(44, 0x00480000).putInt(48, 0x00480000).putShort(56, (short) 1)
+                .putShort(90, (short) 0x18).putShort(92, (short) -1);
+
+        ByteBuffer stsz = ByteBuffer.allocate(12);
+        stsz.putInt(4, 100).putInt(8, 30);
+
+        byte[] stbl = box("stbl", box("stsd", stsd.array()), box("stsz", stsz.array()));
+        byte[] mdia = box("mdia", box("mdhd", mdhd.array()), box("hdlr", hdlr.array()), box("minf", stbl));
+        byte[] moov = box("moov", box("mvhd", mvhd.array()), box("trak", box("tkhd", tkhd.array()), mdia));
+
+        ByteBuffer ftyp = ByteBuffer.allocate(16);
+        ftyp.put("isom".getBytes(StandardCharsets.US_ASCII)).putInt(0x200)
+                .put("mp41".getBytes(StandardCharsets.US_ASCII));
+        return concat(box("ftyp", ftyp.array()), moov, box("mdat", new byte[3000]));
+    }
+
+    private static void putIdentityMatrix(@NonNull ByteBuffer buffer, int offset) {
+        buffer.putInt(offset, 0x00010000).putInt(offset + 16, 0x00010000).putInt(offset + 32, 0x40000000);
+    }
+
+    @NonNull
+    private static byte[] box(@NonNull String type, @NonNull byte[]... children) {
+        byte[] payload = concat(children);
+        return ByteBuffer.allocate(8 + payload.length)
+                .putInt(8 + payload.length)
+                .put(type.getBytes(StandardCharsets.US_ASCII))
+                .put(payload)
+                .array();
+    }
+
+    @NonNull
+    private static byte[] concat(@NonNull byte[]... parts) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            output.write(part, 0, part.length);
+        }
+        return output.toByteArray();
+    }
+
+    @NonNull
+    private static byte[] gzip(@NonNull byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream output = new GZIPOutputStream(bytes);
+        output.write(content);
+        output.close();
+        return bytes.toByteArray();
+    }
+
+    private static void writeFile(@NonNull File file, @NonNull byte[] content) throws IOException {
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent.getPath());
+        }
+
+        OutputStream output = new FileOutputStream(file);
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            output.write(content);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static void delete(@NonNull File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
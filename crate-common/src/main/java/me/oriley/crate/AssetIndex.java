@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Packed index of every asset, written into the assets by the plugin when the binary index is enabled. Paths are
+ * stored as a shared table of folder and file name strings, and metadata as parallel arrays indexed by asset ID, so
+ * no {@link Asset} objects exist until one is requested with {@link #getAsset(int)}.
+ */
+@SuppressWarnings("unused")
+public final class AssetIndex {
+
+    public static final String FILE_NAME = "crate-index.bin";
+
+    public static final int TYPE_ASSET = 0;
+    public static final int TYPE_FONT = 1;
+    public static final int TYPE_IMAGE = 2;
+    public static final int TYPE_VIDEO = 3;
+    public static final int TYPE_SVG = 4;
+
+    static final int MAGIC = 0x43524958; // CRIX
+    static final int VERSION = 1;
+
+    static final int FLAG_GZIPPED = 0x01;
+    static final int FLAG_ITALIC = 0x02;
+
+    static final int NO_STRING = -1;
+
+    private final String[] mStrings;
+
+    // Full path of each folder including the trailing separator, built once on load
+    private final String[] mFolderPaths;
+
+    private final byte[] mTypes;
+
+    private final byte[] mFlags;
+
+    private final int[] mFolders;
+
+    private final int[] mNames;
+
+    private final long[] mLengths;
+
+    private final int[] mWidths;
+
+    private final int[] mHeights;
+
+    // Row of each font or video asset in its type specific table, -1 for other types
+    private final int[] mRows;
+
+    private final int[] mFontNames;
+
+    private final int[] mFamilyNames;
+
+    private final int[] mWeights;
+
+    private final int[] mUnitsPerEm;
+
+    private final int[] mAscents;
+
+    private final int[] mDescents;
+
+    private final int[] mGlyphCounts;
+
+    private final int[] mRotations;
+
+    private final float[] mFrameRates;
+
+    private final long[] mDurations;
+
+    private final long[] mBitRates;
+
+    private final int[] mVideoCodecs;
+
+    private final int[] mAudioCodecs;
+
+
+    private AssetIndex(DataInputStream input) throws IOException {
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a Crate asset index");
+        }
+        int version = input.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported Crate asset index version " + version);
+        }
+
+        mStrings = new String[input.readInt()];
+        for (int i = 0; i < mStrings.length; i++) {
+            mStrings[i] = input.readUTF();
+        }
+
+        // Parents are always written before their children
+        mFolderPaths = new String[input.readInt()];
+        for (int i = 0; i < mFolderPaths.length; i++) {
+            int parent = input.readInt();
+            int name = input.readInt();
+            mFolderPaths[i] = parent < 0 ? "" : mFolderPaths[parent] + mStrings[name] + "/";
+        }
+
+        int count = input.readInt();
+        mTypes = new byte[count];
+        input.readFully(mTypes);
+        mFlags = new byte[count];
+        input.readFully(mFlags);
+        mFolders = readInts(input, count);
+        mNames = readInts(input, count);
+        mLengths = readLongs(input, count);
+        mWidths = readInts(input, count);
+        mHeights = readInts(input, count);
+
+        int fontCount = input.readInt();
+        mFontNames = readInts(input, fontCount);
+        mFamilyNames = readInts(input, fontCount);
+        mWeights = readInts(input, fontCount);
+        mUnitsPerEm = readInts(input, fontCount);
+        mAscents = readInts(input, fontCount);
+        mDescents = readInts(input, fontCount);
+        mGlyphCounts = readInts(input, fontCount);
+
+        int videoCount = input.readInt();
+        mRotations = readInts(input, videoCount);
+        mFrameRates = new float[videoCount];
+        for (int i = 0; i < videoCount; i++) {
+            mFrameRates[i] = input.readFloat();
+        }
+        mDurations = readLongs(input, videoCount);
+        mBitRates = readLongs(input, videoCount);
+        mVideoCodecs = readInts(input, videoCount);
+        mAudioCodecs = readInts(input, videoCount);
+
+        mRows = new int[count];
+        int fontRow = 0;
+        int videoRow = 0;
+        for (int i = 0; i < count; i++) {
+            if (mTypes[i] == TYPE_FONT) {
+                mRows[i] = fontRow++;
+            } else if (mTypes[i] == TYPE_VIDEO) {
+                mRows[i] = videoRow++;
+            } else {
+                mRows[i] = -1;
+            }
+        }
+        if (fontRow != fontCount || videoRow != videoCount) {
+            throw new IOException("Corrupt Crate asset index");
+        }
+    }
+
+    /**
+     * Reads the whole index in a single pass. The stream is not closed.
+     */
+    public static AssetIndex read(InputStream stream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = stream.read(buffer)) >= 0) {
+            bytes.write(buffer, 0, read);
+        }
+        return new AssetIndex(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    public int size() {
+        return mTypes.length;
+    }
+
+    /**
+     * @return one of the TYPE_ constants
+     */
+    public int getType(int id) {
+        return mTypes[id];
+    }
+
+    public boolean isGzipped(int id) {
+        return (mFlags[id] & FLAG_GZIPPED) != 0;
+    }
+
+    public String getPath(int id) {
+        return mFolderPaths[mFolders[id]] + mStrings[mNames[id]];
+    }
+
+    /**
+     * Checks the path of an asset without building it, so lookups don't allocate.
+     */
+    public boolean matches(int id, String path) {
+        String folder = mFolderPaths[mFolders[id]];
+        String name = mStrings[mNames[id]];
+        return path.length() == folder.length() + name.length() && path.startsWith(folder)
+                && path.regionMatches(folder.length(), name, 0, name.length());
+    }
+
+    /**
+     * @return size of the file in bytes, as stored in the assets (so compressed size for Gzipped files)
+     */
+    public long getLength(int id) {
+        return mLengths[id];
+    }
+
+    /**
+     * @return width of an image or video, or 0 for other types
+     */
+    public int getWidth(int id) {
+        return mWidths[id];
+    }
+
+    /**
+     * @return height of an image or video, or 0 for other types
+     */
+    public int getHeight(int id) {
+        return mHeights[id];
+    }
+
+    /**
+     * Creates a new {@link Asset} of the appropriate subtype for the given ID.
+     */
+    public Asset getAsset(int id) {
+        String path = getPath(id);
+        boolean gzipped = isGzipped(id);
+        int row = mRows[id];
+
+        switch (mTypes[id]) {
+            case TYPE_FONT:
+                return new FontAsset(path, gzipped, mStrings[mFontNames[row]], mStrings[mFamilyNames[row]],
+                        mWeights[row], (mFlags[id] & FLAG_ITALIC) != 0, mUnitsPerEm[row], mAscents[row],
+                        mDescents[row], mGlyphCounts[row]);
+            case TYPE_IMAGE:
+                return new ImageAsset(path, gzipped, mWidths[id], mHeights[id]);
+            case TYPE_VIDEO:
+                return new VideoAsset(path, gzipped, mWidths[id], mHeights[id], mRotations[row], mFrameRates[row],
+                        mDurations[row], mBitRates[row], getString(mVideoCodecs[row]), getString(mAudioCodecs[row]));
+            case TYPE_SVG:
+                return new SvgAsset(path, gzipped);
+            default:
+                return new Asset(path, gzipped);
+        }
+    }
+
+    private String getString(int index) {
+        return index == NO_STRING ? null : mStrings[index];
+    }
+
+    private static int[] readInts(DataInputStream input, int count) throws IOException {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = input.readInt();
+        }
+        return values;
+    }
+
+    private static long[] readLongs(DataInputStream input, int count) throws IOException {
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = input.readLong();
+        }
+        return values;
+    }
+}
@@ -21,12 +21,66 @@ public class FontAsset extends Asset {
 
     final String mFontName;
 
+    final String mFamilyName;
+
+    final int mWeight;
+
+    final boolean mItalic;
+
+    final int mUnitsPerEm;
+
+    final int mAscent;
+
+    final int mDescent;
+
+    final int mGlyphCount;
+
     FontAsset(String path, boolean gzipped, String fontName) {
+        this(path, gzipped, fontName, fontName, 0, false, 0, 0, 0, 0);
+    }
+
+    FontAsset(String path, boolean gzipped, String fontName, String familyName, int weight, boolean italic,
+              int unitsPerEm, int ascent, int descent, int glyphCount) {
         super(path, gzipped);
         mFontName = fontName;
+        mFamilyName = familyName;
+        mWeight = weight;
+        mItalic = italic;
+        mUnitsPerEm = unitsPerEm;
+        mAscent = ascent;
+        mDescent = descent;
+        mGlyphCount = glyphCount;
     }
 
     public String getFontName() {
         return mFontName;
     }
+
+    public String getFamilyName() {
+        return mFamilyName;
+    }
+
+    public int getWeight() {
+        return mWeight;
+    }
+
+    public boolean isItalic() {
+        return mItalic;
+    }
+
+    public int getUnitsPerEm() {
+        return mUnitsPerEm;
+    }
+
+    public int getAscent() {
+        return mAscent;
+    }
+
+    public int getDescent() {
+        return mDescent;
+    }
+
+    public int getGlyphCount() {
+        return mGlyphCount;
+    }
 }
\ No newline at end of file
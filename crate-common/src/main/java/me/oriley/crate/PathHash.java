@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate;
+
+/**
+ * Perfect hash of asset paths, built by the plugin (hash and displace). Each path is first hashed to a bucket, and the
+ * bucket's displacement is then used as the seed of a second hash giving its slot. The plugin picks displacements so
+ * every path gets a different slot in a table slightly larger than the number of paths, leaving some slots empty.
+ * <p>
+ * Displacements are stored as the chars of one or more strings of {@link #CHUNK_SIZE}, which are cheap to embed as
+ * constants and to read without allocating.
+ */
+public final class PathHash {
+
+    static final int CHUNK_SIZE = 16384;
+
+    // Keeps displacements clear of surrogate chars, which can't be written as string constants on their own
+    static final int MAX_DISPLACEMENT = 0xD7FF;
+
+    private PathHash() {
+        throw new IllegalAccessError("no instances");
+    }
+
+    /**
+     * @return number of slots for the given number of paths. A fifth more than needed, as with exactly one slot per
+     * path the last buckets placed often can't find a free slot with any displacement.
+     */
+    public static int getTableSize(int size) {
+        return size + size / 5 + 1;
+    }
+
+    public static int getBucketCount(int tableSize) {
+        return tableSize / 2 + 1;
+    }
+
+    /**
+     * @return slot from 0 to tableSize - 1. Only unique for the paths the table was built from, so the caller needs to
+     * check the slot isn't empty and the path at the slot matches.
+     */
+    public static int getSlot(String path, String[] displacements, int tableSize) {
+        int bucket = getIndex(hash(path, 0), getBucketCount(tableSize));
+        int displacement = displacements[bucket / CHUNK_SIZE].charAt(bucket % CHUNK_SIZE);
+        return getIndex(hash(path, displacement), tableSize);
+    }
+
+    static int getIndex(int hash, int size) {
+        return (hash & 0x7FFFFFFF) % size;
+    }
+
+    /**
+     * Seeded FNV-1a over the chars of the value, followed by a final mix so nearby seeds give unrelated results.
+     */
+    static int hash(String value, int seed) {
+        int hash = 0x811C9DC5 ^ (seed * 0x9E3779B9);
+        for (int i = 0, length = value.length(); i < length; i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x01000193;
+        }
+
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
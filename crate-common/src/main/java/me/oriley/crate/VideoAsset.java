@@ -23,10 +23,33 @@ public class VideoAsset extends Asset {
 
     final int mHeight;
 
+    final int mRotation;
+
+    final float mFrameRate;
+
+    final long mDurationMillis;
+
+    final long mBitRate;
+
+    final String mVideoCodec;
+
+    final String mAudioCodec;
+
     VideoAsset(String path, boolean gzipped, int width, int height) {
+        this(path, gzipped, width, height, -1, -1, -1, -1, null, null);
+    }
+
+    VideoAsset(String path, boolean gzipped, int width, int height, int rotation, float frameRate,
+               long durationMillis, long bitRate, String videoCodec, String audioCodec) {
         super(path, gzipped);
         mWidth = width;
         mHeight = height;
+        mRotation = rotation;
+        mFrameRate = frameRate;
+        mDurationMillis = durationMillis;
+        mBitRate = bitRate;
+        mVideoCodec = videoCodec;
+        mAudioCodec = audioCodec;
     }
 
     public int getWidth() {
@@ -36,4 +59,28 @@ public class VideoAsset extends Asset {
     public int getHeight() {
         return mHeight;
     }
+
+    public int getRotation() {
+        return mRotation;
+    }
+
+    public float getFrameRate() {
+        return mFrameRate;
+    }
+
+    public long getDurationMillis() {
+        return mDurationMillis;
+    }
+
+    public long getBitRate() {
+        return mBitRate;
+    }
+
+    public String getVideoCodec() {
+        return mVideoCodec;
+    }
+
+    public String getAudioCodec() {
+        return mAudioCodec;
+    }
 }
\ No newline at end of file
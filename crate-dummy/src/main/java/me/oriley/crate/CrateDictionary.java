@@ -16,14 +16,25 @@
 
 package me.oriley.crate;
 
+import java.util.Collections;
+import java.util.List;
+
 @SuppressWarnings("unused")
 public final class CrateDictionary {
 
     boolean mDebug;
 
+    boolean mBinaryIndex;
+
+    String[] mPathHash = {};
+
     public final AssetsClass assets = new AssetsClass();
 
     public static final class AssetsClass {
         // Dummy for codegen
     }
+
+    List<Asset> getAllAssets() {
+        return Collections.emptyList();
+    }
 }
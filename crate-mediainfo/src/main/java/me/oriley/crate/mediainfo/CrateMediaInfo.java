@@ -16,13 +16,15 @@
 
 package me.oriley.crate.mediainfo;
 
-import me.oriley.crate.mediainfo.MediaInfo.InfoKind;
+import me.oriley.crate.mediainfo.MediaInfo.StreamKind;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 
 public class CrateMediaInfo {
 
@@ -30,48 +32,155 @@ public class CrateMediaInfo {
 
     private static final String WIDTH = "Width";
     private static final String HEIGHT = "Height";
+    private static final String ROTATION = "Rotation";
+    private static final String FRAME_RATE = "FrameRate";
+    private static final String FORMAT = "Format";
+    private static final String DURATION = "Duration";
+    private static final String OVERALL_BIT_RATE = "OverallBitRate";
 
-    private static final int INVALID = -1;
+    private static final int INVALID = MediaProperties.INVALID;
 
     @Nullable
-    private MediaInfo mMediaInfo;
+    private MediaInfoPool mPool;
 
 
     public CrateMediaInfo() {
+        this(1);
+    }
+
+    /**
+     * @param poolSize maximum number of files which can be probed by native MediaInfo concurrently
+     */
+    public CrateMediaInfo(int poolSize) {
         try {
-            mMediaInfo = new MediaInfo();
-        } catch (Exception e) {
+            mPool = new MediaInfoPool(poolSize);
+            // Check the native library is available up front
+            mPool.release(mPool.borrow());
+        } catch (Exception | LinkageError e) {
             logError("Failed to instantiate media info", e, false);
+            mPool = null;
         }
     }
 
 
     public boolean isAvailable() {
-        return mMediaInfo != null;
+        return mPool != null;
+    }
+
+    /**
+     * Disposes idle native handles. New handles will be created as required.
+     */
+    public void trim() {
+        if (mPool != null) {
+            mPool.trim();
+        }
+    }
+
+    /**
+     * Disposes all native handles, this instance will only use the pure Java parser afterwards.
+     */
+    public void dispose() {
+        if (mPool != null) {
+            mPool.close();
+            mPool = null;
+        }
     }
 
     public int[] getDimensions(@Nonnull File file) {
-        int[] dimens = new int[2];
-        dimens[0] = getIntValue(file, WIDTH);
-        dimens[1] = getIntValue(file, HEIGHT);
-        return dimens;
+        MediaProperties properties = probe(file);
+        return new int[]{properties.mWidth, properties.mHeight};
     }
 
-    private int getIntValue(@Nonnull File file, @Nonnull String field) {
-        if (mMediaInfo == null) {
-            return INVALID;
+    /**
+     * Gathers all video, audio and general properties of the file, opening it only once.
+     */
+    @Nonnull
+    public MediaProperties probe(@Nonnull File file) {
+        try {
+            MediaProperties properties = VideoContainerReader.read(file);
+            if (properties != null) {
+                return properties;
+            }
+        } catch (IOException e) {
+            logError("Error reading container for file " + file.getAbsolutePath(), e, false);
         }
 
+        // Unsupported container, fall back to native MediaInfo
+        return probeMediaInfo(file);
+    }
+
+    /**
+     * As {@link #probe(File)}, but reads the container through a channel the caller already has open on the file.
+     */
+    @Nonnull
+    public MediaProperties probe(@Nonnull File file, @Nonnull FileChannel channel) {
         try {
-            mMediaInfo.open(file);
-            String value = mMediaInfo.get(MediaInfo.StreamKind.Video, 0, field, InfoKind.Text, InfoKind.Name);
-            return Integer.parseInt(value);
+            MediaProperties properties = VideoContainerReader.read(channel);
+            if (properties != null) {
+                return properties;
+            }
+        } catch (IOException e) {
+            logError("Error reading container for file " + file.getAbsolutePath(), e, false);
+        }
+
+        // Unsupported container, fall back to native MediaInfo
+        return probeMediaInfo(file);
+    }
+
+    @Nonnull
+    private MediaProperties probeMediaInfo(@Nonnull File file) {
+        MediaProperties properties = new MediaProperties();
+        MediaInfoPool pool = mPool;
+        if (pool == null) {
+            return properties;
+        }
+
+        MediaInfo mediaInfo;
+        try {
+            mediaInfo = pool.borrow();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return properties;
+        }
+
+        try {
+            mediaInfo.open(file);
+            properties.mWidth = (int) parseNumber(mediaInfo.get(StreamKind.Video, 0, WIDTH));
+            properties.mHeight = (int) parseNumber(mediaInfo.get(StreamKind.Video, 0, HEIGHT));
+            properties.mRotation = (int) parseNumber(mediaInfo.get(StreamKind.Video, 0, ROTATION));
+            properties.mFrameRate = (float) parseNumber(mediaInfo.get(StreamKind.Video, 0, FRAME_RATE));
+            properties.mVideoCodec = parseString(mediaInfo.get(StreamKind.Video, 0, FORMAT));
+            properties.mAudioCodec = parseString(mediaInfo.get(StreamKind.Audio, 0, FORMAT));
+            properties.mDurationMillis = (long) parseNumber(mediaInfo.get(StreamKind.General, 0, DURATION));
+            properties.mBitRate = (long) parseNumber(mediaInfo.get(StreamKind.General, 0, OVERALL_BIT_RATE));
         } catch (Exception e) {
-            logError("Error parsing " + field + " for file " + file.getAbsolutePath(), e, false);
-            return INVALID;
+            logError("Error probing file " + file.getAbsolutePath(), e, false);
         } finally {
-            mMediaInfo.close();
+            mediaInfo.close();
+            pool.release(mediaInfo);
+        }
+
+        if (properties.mRotation == INVALID && properties.hasDimensions()) {
+            properties.mRotation = 0;
+        }
+        return properties;
+    }
+
+    private static double parseNumber(@Nullable String value) {
+        if (value == null || value.isEmpty()) {
+            return INVALID;
         }
+
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return INVALID;
+        }
+    }
+
+    @Nullable
+    private static String parseString(@Nullable String value) {
+        return value == null || value.isEmpty() ? null : value;
     }
 
     private void logError(@Nonnull String message, @Nonnull Throwable error, boolean throwError) {
@@ -8,7 +8,8 @@ import java.io.FileFilter;
 @SuppressWarnings("unused")
 public class MediaDurationFilter implements FileFilter {
 
-	private final MediaInfo mediaInfo = new MediaInfo();
+	private final MediaInfoPool pool;
+	private final boolean ownsPool;
 
 	private final long min;
 	private final long max;
@@ -19,19 +20,40 @@ public class MediaDurationFilter implements FileFilter {
 	}
 
 	public MediaDurationFilter(long min, long max, boolean acceptByDefault) {
+		this(new MediaInfoPool(Runtime.getRuntime().availableProcessors()), true, min, max, acceptByDefault);
+	}
+
+	public MediaDurationFilter(MediaInfoPool pool, long min, long max, boolean acceptByDefault) {
+		this(pool, false, min, max, acceptByDefault);
+	}
+
+	private MediaDurationFilter(MediaInfoPool pool, boolean ownsPool, long min, long max, boolean acceptByDefault) {
+		this.pool = pool;
+		this.ownsPool = ownsPool;
 		this.min = min;
 		this.max = max;
 		this.acceptByDefault = acceptByDefault;
 	}
 
 	public long getDuration(File file) {
-		synchronized (mediaInfo) {
-			try {
-				String duration = mediaInfo.open(file).get(MediaInfo.StreamKind.General, 0, "Duration");
-				return Long.parseLong(duration);
-			} catch (Exception e) {
-				// WTF
-			}
+		MediaInfo mediaInfo;
+		try {
+			mediaInfo = pool.borrow();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return -1;
+		} catch (Exception e) {
+			return -1;
+		}
+
+		try {
+			String duration = mediaInfo.open(file).get(MediaInfo.StreamKind.General, 0, "Duration");
+			return Long.parseLong(duration);
+		} catch (Exception e) {
+			// WTF
+		} finally {
+			mediaInfo.close();
+			pool.release(mediaInfo);
 		}
 		return -1;
 	}
@@ -44,4 +66,13 @@ public class MediaDurationFilter implements FileFilter {
 		}
 		return acceptByDefault;
 	}
+
+	/**
+	 * Disposes native handles, if the pool was created by this filter
+	 */
+	public void dispose() {
+		if (ownsPool) {
+			pool.close();
+		}
+	}
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.oriley.crate.mediainfo;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pool of native {@link MediaInfo} handles. Each handle can only have one file open at a time, so callers
+ * borrow a handle for the duration of an open/get/close sequence and release it afterwards. Handles are created
+ * lazily, up to the maximum size, and borrowing blocks while all of them are in use, or until the pool is closed.
+ */
+@SuppressWarnings("unused")
+public final class MediaInfoPool implements Closeable {
+
+    // How often blocked borrowers check whether the pool has been closed
+    private static final long CLOSED_CHECK_MILLIS = 100;
+
+    private final int mMaxSize;
+
+    @Nonnull
+    private final BlockingQueue<MediaInfo> mIdle = new LinkedBlockingQueue<>();
+
+    private int mCreated;
+
+    private volatile boolean mClosed;
+
+
+    public MediaInfoPool(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1, was " + maxSize);
+        }
+        mMaxSize = maxSize;
+    }
+
+
+    /**
+     * @throws MediaInfoException   if the native library couldn't be loaded
+     * @throws IllegalStateException if the pool is closed, including while waiting for a handle
+     */
+    @Nonnull
+    public MediaInfo borrow() throws InterruptedException {
+        if (mClosed) {
+            throw new IllegalStateException("Pool is closed");
+        }
+
+        MediaInfo mediaInfo = mIdle.poll();
+        if (mediaInfo != null) {
+            return mediaInfo;
+        }
+
+        synchronized (this) {
+            if (mCreated < mMaxSize) {
+                mediaInfo = new MediaInfo();
+                mCreated++;
+                return mediaInfo;
+            }
+        }
+
+        while (!mClosed) {
+            mediaInfo = mIdle.poll(CLOSED_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+            if (mediaInfo != null) {
+                return mediaInfo;
+            }
+        }
+        throw new IllegalStateException("Pool is closed");
+    }
+
+    public void release(@Nonnull MediaInfo mediaInfo) {
+        if (mClosed) {
+            dispose(mediaInfo);
+        } else {
+            mIdle.offer(mediaInfo);
+        }
+    }
+
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Disposes all idle handles. The pool remains usable and will create new handles as required.
+     */
+    public void trim() {
+        List<MediaInfo> idle = new ArrayList<>();
+        mIdle.drainTo(idle);
+        for (MediaInfo mediaInfo : idle) {
+            dispose(mediaInfo);
+        }
+    }
+
+    /**
+     * Disposes all idle handles, and any borrowed handles as they are released. Threads waiting to borrow a handle
+     * fail with an {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        mClosed = true;
+        trim();
+    }
+
+    private void dispose(@Nonnull MediaInfo mediaInfo) {
+        mediaInfo.dispose();
+        synchronized (this) {
+            mCreated--;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.oriley.crate.mediainfo;
+
+import javax.annotation.Nullable;
+
+/**
+ * Video, audio and general properties of a media file, gathered in a single pass. Any value which couldn't be
+ * determined is {@link #INVALID} (or null for codecs).
+ */
+@SuppressWarnings("unused")
+public final class MediaProperties {
+
+    public static final int INVALID = -1;
+
+    int mWidth = INVALID;
+
+    int mHeight = INVALID;
+
+    int mRotation = INVALID;
+
+    float mFrameRate = INVALID;
+
+    long mDurationMillis = INVALID;
+
+    long mBitRate = INVALID;
+
+    @Nullable
+    String mVideoCodec;
+
+    @Nullable
+    String mAudioCodec;
+
+
+    /**
+     * Creates properties with every value unknown
+     */
+    public MediaProperties() {
+    }
+
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return clockwise rotation in degrees to apply when displaying the video
+     */
+    public int getRotation() {
+        return mRotation;
+    }
+
+    public float getFrameRate() {
+        return mFrameRate;
+    }
+
+    public long getDurationMillis() {
+        return mDurationMillis;
+    }
+
+    /**
+     * @return overall bit rate in bits per second
+     */
+    public long getBitRate() {
+        return mBitRate;
+    }
+
+    /**
+     * @return video codec, as a sample entry type (such as avc1) or Matroska codec ID (such as V_VP8)
+     */
+    @Nullable
+    public String getVideoCodec() {
+        return mVideoCodec;
+    }
+
+    /**
+     * @return audio codec of the first audio track, or null if there isn't one
+     */
+    @Nullable
+    public String getAudioCodec() {
+        return mAudioCodec;
+    }
+
+    boolean hasDimensions() {
+        return mWidth > 0 && mHeight > 0;
+    }
+
+    void calculateBitRate(long fileSize) {
+        if (mBitRate <= 0 && mDurationMillis > 0) {
+            mBitRate = fileSize * 8 * 1000 / mDurationMillis;
+        }
+    }
+}
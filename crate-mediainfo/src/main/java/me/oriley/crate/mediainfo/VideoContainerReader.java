@@ -0,0 +1,477 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.oriley.crate.mediainfo;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads video properties directly from MP4/3GP (ISO base media) and WebM (Matroska/EBML) containers. Only box and
+ * element headers are read, using positioned reads to jump over everything else (including media data), so the cost
+ * is independent of the file size.
+ */
+public final class VideoContainerReader {
+
+    // ISO base media file format box types
+    private static final int FTYP = 0x66747970;
+    private static final int MOOV = 0x6D6F6F76;
+    private static final int MDAT = 0x6D646174;
+    private static final int FREE = 0x66726565;
+    private static final int SKIP = 0x736B6970;
+    private static final int WIDE = 0x77696465;
+    private static final int MVHD = 0x6D766864;
+    private static final int TRAK = 0x7472616B;
+    private static final int TKHD = 0x746B6864;
+    private static final int MDIA = 0x6D646961;
+    private static final int MDHD = 0x6D646864;
+    private static final int HDLR = 0x68646C72;
+    private static final int MINF = 0x6D696E66;
+    private static final int STBL = 0x7374626C;
+    private static final int STSD = 0x73747364;
+    private static final int STSZ = 0x7374737A;
+    private static final int VIDE = 0x76696465;
+    private static final int SOUN = 0x736F756E;
+    private static final int FIXED_ONE = 0x10000;
+
+    // Matroska element IDs, including the length marker bits
+    private static final long EBML = 0x1A45DFA3L;
+    private static final long SEGMENT = 0x18538067L;
+    private static final long INFO = 0x1549A966L;
+    private static final long TIMECODE_SCALE = 0x2AD7B1L;
+    private static final long DURATION = 0x4489L;
+    private static final long TRACKS = 0x1654AE6BL;
+    private static final long TRACK_ENTRY = 0xAEL;
+    private static final long TRACK_TYPE = 0x83L;
+    private static final long CODEC_ID = 0x86L;
+    private static final long DEFAULT_DURATION = 0x23E383L;
+    private static final long VIDEO = 0xE0L;
+    private static final long PIXEL_WIDTH = 0xB0L;
+    private static final long PIXEL_HEIGHT = 0xBAL;
+
+    private static final int TRACK_TYPE_VIDEO = 1;
+    private static final int TRACK_TYPE_AUDIO = 2;
+    private static final long DEFAULT_TIMECODE_SCALE = 1000000;
+    private static final long UNKNOWN_SIZE = -1;
+
+    private VideoContainerReader() {
+        throw new IllegalAccessError("no instances");
+    }
+
+    /**
+     * @return width and height of the first video track, or null if the container isn't supported or has no video
+     */
+    @Nullable
+    public static int[] readDimensions(@Nonnull File file) throws IOException {
+        MediaProperties properties = read(file);
+        return properties != null ? new int[]{properties.mWidth, properties.mHeight} : null;
+    }
+
+    /**
+     * @return properties of the first video and audio tracks, or null if the container isn't supported or has no
+     * video track with valid dimensions
+     */
+    @Nullable
+    public static MediaProperties read(@Nonnull File file) throws IOException {
+        try (FileInputStream stream = new FileInputStream(file)) {
+            return read(stream.getChannel());
+        }
+    }
+
+    @Nullable
+    public static MediaProperties read(@Nonnull FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < 8) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        read(channel, buffer, 0, 8);
+        int first = buffer.getInt(0);
+        int second = buffer.getInt(4);
+
+        MediaProperties properties = new MediaProperties();
+        try {
+            if ((first & 0xFFFFFFFFL) == EBML) {
+                readMatroska(channel, size, properties);
+            } else if (second == FTYP || second == MOOV || second == MDAT || second == FREE || second == SKIP
+                    || second == WIDE) {
+                readIsoBmff(channel, size, properties);
+            }
+        } catch (EOFException e) {
+            // Truncated file
+        }
+
+        if (!properties.hasDimensions()) {
+            return null;
+        }
+
+        properties.calculateBitRate(size);
+        return properties;
+    }
+
+    private static void readIsoBmff(@Nonnull FileChannel channel,
+                                    long size,
+                                    @Nonnull MediaProperties properties) throws IOException {
+        long[] moov = findBox(channel, 0, size, MOOV);
+        if (moov == null) {
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(36);
+        long[] mvhd = findBox(channel, moov[0], moov[1], MVHD);
+        if (mvhd != null) {
+            long[] timing = readTiming(channel, mvhd, buffer);
+            if (timing[0] > 0) {
+                properties.mDurationMillis = timing[1] * 1000 / timing[0];
+            }
+        }
+
+        long position = moov[0];
+        long[] trak;
+        while ((trak = findBox(channel, position, moov[1], TRAK)) != null) {
+            position = trak[1];
+
+            long[] mdia = findBox(channel, trak[0], trak[1], MDIA);
+            long[] hdlr = mdia != null ? findBox(channel, mdia[0], mdia[1], HDLR) : null;
+            if (hdlr == null) {
+                continue;
+            }
+
+            // Version/flags and pre_defined precede the handler type
+            read(channel, buffer, hdlr[0] + 8, 4);
+            int handler = buffer.getInt(0);
+            if (handler == VIDE && !properties.hasDimensions()) {
+                readVideoTrack(channel, trak, mdia, buffer, properties);
+            } else if (handler == SOUN && properties.mAudioCodec == null) {
+                long[] stbl = findSampleTable(channel, mdia);
+                long[] stsd = stbl != null ? findBox(channel, stbl[0], stbl[1], STSD) : null;
+                if (stsd != null && stsd[0] + 16 <= stsd[1]) {
+                    read(channel, buffer, stsd[0] + 12, 4);
+                    properties.mAudioCodec = readFourCc(buffer, 0);
+                }
+            }
+        }
+    }
+
+    private static void readVideoTrack(@Nonnull FileChannel channel,
+                                       @Nonnull long[] trak,
+                                       @Nonnull long[] mdia,
+                                       @Nonnull ByteBuffer buffer,
+                                       @Nonnull MediaProperties properties) throws IOException {
+        long[] stbl = findSampleTable(channel, mdia);
+        long[] stsd = stbl != null ? findBox(channel, stbl[0], stbl[1], STSD) : null;
+
+        // Version/flags and entry count, then the first visual sample entry. Width and height follow the
+        // 8 byte box header, 8 bytes of sample entry fields and 16 bytes of reserved/pre_defined values.
+        if (stsd != null && stsd[0] + 8 + 36 <= stsd[1]) {
+            read(channel, buffer, stsd[0] + 8, 36);
+            properties.mWidth = buffer.getShort(32) & 0xFFFF;
+            properties.mHeight = buffer.getShort(34) & 0xFFFF;
+            properties.mVideoCodec = readFourCc(buffer, 4);
+        }
+
+        long[] tkhd = findBox(channel, trak[0], trak[1], TKHD);
+        if (tkhd != null) {
+            read(channel, buffer, tkhd[0], 1);
+            long matrix = tkhd[0] + (buffer.get(0) == 1 ? 52 : 40);
+            if (matrix + 44 <= tkhd[1]) {
+                // Transformation matrix followed by the 16.16 fixed point presentation size
+                read(channel, buffer, matrix, 20);
+                properties.mRotation = getRotation(buffer.getInt(0), buffer.getInt(4), buffer.getInt(12),
+                        buffer.getInt(16));
+                if (!properties.hasDimensions()) {
+                    read(channel, buffer, matrix + 36, 8);
+                    properties.mWidth = buffer.getInt(0) >>> 16;
+                    properties.mHeight = buffer.getInt(4) >>> 16;
+                }
+            }
+        }
+
+        long[] mdhd = findBox(channel, mdia[0], mdia[1], MDHD);
+        long[] stsz = stbl != null ? findBox(channel, stbl[0], stbl[1], STSZ) : null;
+        if (mdhd != null && stsz != null) {
+            long[] timing = readTiming(channel, mdhd, buffer);
+            read(channel, buffer, stsz[0] + 8, 4);
+            long samples = buffer.getInt(0) & 0xFFFFFFFFL;
+            if (timing[0] > 0 && timing[1] > 0) {
+                properties.mFrameRate = (float) ((double) samples * timing[0] / timing[1]);
+            }
+        }
+    }
+
+    @Nullable
+    private static long[] findSampleTable(@Nonnull FileChannel channel, @Nonnull long[] mdia) throws IOException {
+        long[] minf = findBox(channel, mdia[0], mdia[1], MINF);
+        return minf != null ? findBox(channel, minf[0], minf[1], STBL) : null;
+    }
+
+    /**
+     * @return time scale and duration from a movie or media header box
+     */
+    @Nonnull
+    private static long[] readTiming(@Nonnull FileChannel channel,
+                                     @Nonnull long[] box,
+                                     @Nonnull ByteBuffer buffer) throws IOException {
+        read(channel, buffer, box[0], 1);
+        if (buffer.get(0) == 1) {
+            read(channel, buffer, box[0] + 20, 12);
+            return new long[]{buffer.getInt(0) & 0xFFFFFFFFL, buffer.getLong(4)};
+        } else {
+            read(channel, buffer, box[0] + 12, 8);
+            return new long[]{buffer.getInt(0) & 0xFFFFFFFFL, buffer.getInt(4) & 0xFFFFFFFFL};
+        }
+    }
+
+    private static int getRotation(int a, int b, int c, int d) {
+        if (a == 0 && b == FIXED_ONE && c == -FIXED_ONE && d == 0) {
+            return 90;
+        } else if (a == -FIXED_ONE && b == 0 && c == 0 && d == -FIXED_ONE) {
+            return 180;
+        } else if (a == 0 && b == -FIXED_ONE && c == FIXED_ONE && d == 0) {
+            return 270;
+        } else {
+            return 0;
+        }
+    }
+
+    @Nonnull
+    private static String readFourCc(@Nonnull ByteBuffer buffer, int offset) {
+        return new String(buffer.array(), offset, 4, StandardCharsets.US_ASCII).trim();
+    }
+
+    /**
+     * @return payload start and end of the first box of the given type within the range, or null if not found
+     */
+    @Nullable
+    private static long[] findBox(@Nonnull FileChannel channel, long start, long end, int type) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8);
+        long position = start;
+        while (position + 8 <= end) {
+            read(channel, header, position, 8);
+            long size = header.getInt(0) & 0xFFFFFFFFL;
+            int boxType = header.getInt(4);
+            int headerSize = 8;
+
+            if (size == 1) {
+                read(channel, header, position + 8, 8);
+                size = header.getLong(0);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = end - position;
+            }
+
+            if (size < headerSize) {
+                return null;
+            } else if (boxType == type) {
+                return new long[]{position + headerSize, Math.min(position + size, end)};
+            }
+            position += size;
+        }
+        return null;
+    }
+
+    private static void readMatroska(@Nonnull FileChannel channel,
+                                     long size,
+                                     @Nonnull MediaProperties properties) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        long[] header = readElement(channel, buffer, 0);
+        if (header[2] == UNKNOWN_SIZE) {
+            return;
+        }
+
+        long[] segment = readElement(channel, buffer, header[1] + header[2]);
+        if (segment[0] != SEGMENT) {
+            return;
+        }
+
+        long segmentEnd = segment[2] == UNKNOWN_SIZE ? size : Math.min(segment[1] + segment[2], size);
+        long[] info = findElement(channel, buffer, segment[1], segmentEnd, INFO);
+        if (info != null) {
+            long infoEnd = info[1] + info[2];
+            long[] scale = findElement(channel, buffer, info[1], infoEnd, TIMECODE_SCALE);
+            long[] duration = findElement(channel, buffer, info[1], infoEnd, DURATION);
+            if (duration != null) {
+                long timecodeScale = scale != null ? readUnsigned(channel, buffer, scale) : DEFAULT_TIMECODE_SCALE;
+                properties.mDurationMillis = (long) (readFloat(channel, buffer, duration) * timecodeScale / 1000000);
+            }
+        }
+
+        long[] tracks = findElement(channel, buffer, segment[1], segmentEnd, TRACKS);
+        if (tracks == null) {
+            return;
+        }
+
+        long position = tracks[1];
+        long tracksEnd = tracks[1] + tracks[2];
+        long[] entry;
+        while ((entry = findElement(channel, buffer, position, tracksEnd, TRACK_ENTRY)) != null) {
+            long entryEnd = entry[1] + entry[2];
+            position = entryEnd;
+
+            long[] trackType = findElement(channel, buffer, entry[1], entryEnd, TRACK_TYPE);
+            long type = trackType != null ? readUnsigned(channel, buffer, trackType) : 0;
+            long[] codecId = findElement(channel, buffer, entry[1], entryEnd, CODEC_ID);
+
+            if (type == TRACK_TYPE_AUDIO && properties.mAudioCodec == null) {
+                properties.mAudioCodec = codecId != null ? readString(channel, codecId) : null;
+            } else if (type == TRACK_TYPE_VIDEO && !properties.hasDimensions()) {
+                long[] video = findElement(channel, buffer, entry[1], entryEnd, VIDEO);
+                if (video == null) {
+                    continue;
+                }
+
+                long videoEnd = video[1] + video[2];
+                long[] width = findElement(channel, buffer, video[1], videoEnd, PIXEL_WIDTH);
+                long[] height = findElement(channel, buffer, video[1], videoEnd, PIXEL_HEIGHT);
+                if (width == null || height == null) {
+                    continue;
+                }
+
+                properties.mWidth = (int) readUnsigned(channel, buffer, width);
+                properties.mHeight = (int) readUnsigned(channel, buffer, height);
+                properties.mRotation = 0;
+                properties.mVideoCodec = codecId != null ? readString(channel, codecId) : null;
+
+                // Nanoseconds per frame
+                long[] frameDuration = findElement(channel, buffer, entry[1], entryEnd, DEFAULT_DURATION);
+                long nanos = frameDuration != null ? readUnsigned(channel, buffer, frameDuration) : 0;
+                if (nanos > 0) {
+                    properties.mFrameRate = 1000000000f / nanos;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return id, data start and data size of the first element with the given id within the range, or null
+     */
+    @Nullable
+    private static long[] findElement(@Nonnull FileChannel channel,
+                                      @Nonnull ByteBuffer buffer,
+                                      long start,
+                                      long end,
+                                      long id) throws IOException {
+        long position = start;
+        while (position < end) {
+            long[] element = readElement(channel, buffer, position);
+            if (element[0] == id) {
+                return element;
+            } else if (element[2] == UNKNOWN_SIZE) {
+                // Can't skip over an element of unknown size (such as a live cluster)
+                return null;
+            }
+            position = element[1] + element[2];
+        }
+        return null;
+    }
+
+    @Nonnull
+    private static long[] readElement(@Nonnull FileChannel channel,
+                                      @Nonnull ByteBuffer buffer,
+                                      long position) throws IOException {
+        read(channel, buffer, position, 1);
+        int idLength = vintLength(buffer.get(0));
+        read(channel, buffer, position, idLength);
+        long id = 0;
+        for (int i = 0; i < idLength; i++) {
+            id = (id << 8) | (buffer.get(i) & 0xFF);
+        }
+
+        position += idLength;
+        read(channel, buffer, position, 1);
+        int sizeLength = vintLength(buffer.get(0));
+        read(channel, buffer, position, sizeLength);
+
+        // Strip the length marker, an all ones value means the size is unknown
+        long size = buffer.get(0) & (0xFF >> sizeLength);
+        boolean unknown = size == (0xFF >> sizeLength);
+        for (int i = 1; i < sizeLength; i++) {
+            int b = buffer.get(i) & 0xFF;
+            unknown &= b == 0xFF;
+            size = (size << 8) | b;
+        }
+
+        return new long[]{id, position + sizeLength, unknown ? UNKNOWN_SIZE : size};
+    }
+
+    private static long readUnsigned(@Nonnull FileChannel channel,
+                                     @Nonnull ByteBuffer buffer,
+                                     @Nonnull long[] element) throws IOException {
+        int length = (int) element[2];
+        if (length < 1 || length > 8) {
+            return 0;
+        }
+
+        read(channel, buffer, element[1], length);
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | (buffer.get(i) & 0xFF);
+        }
+        return value;
+    }
+
+    private static double readFloat(@Nonnull FileChannel channel,
+                                    @Nonnull ByteBuffer buffer,
+                                    @Nonnull long[] element) throws IOException {
+        if (element[2] == 4) {
+            read(channel, buffer, element[1], 4);
+            return buffer.getFloat(0);
+        } else if (element[2] == 8) {
+            read(channel, buffer, element[1], 8);
+            return buffer.getDouble(0);
+        }
+        return 0;
+    }
+
+    @Nullable
+    private static String readString(@Nonnull FileChannel channel, @Nonnull long[] element) throws IOException {
+        if (element[2] < 1 || element[2] > 256) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) element[2]);
+        read(channel, buffer, element[1], buffer.capacity());
+        return new String(buffer.array(), StandardCharsets.US_ASCII).trim();
+    }
+
+    private static int vintLength(byte first) throws IOException {
+        if (first == 0) {
+            throw new IOException("Invalid EBML variable length integer");
+        }
+        return Integer.numberOfLeadingZeros(first & 0xFF) - 23;
+    }
+
+    private static void read(@Nonnull FileChannel channel,
+                             @Nonnull ByteBuffer buffer,
+                             long position,
+                             int length) throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+}
@@ -21,6 +21,16 @@ class CrateExtension {
 
     def boolean debugLogging = false
 
+    def int parallelism = Runtime.runtime.availableProcessors()
+
+    def boolean lazyFolders = false
+
+    def boolean binaryIndex = false
+
+    def boolean classOutput = false
+
+    def boolean buildReport = false
+
     def setDebugLogging(boolean enable) {
         debugLogging = enable
     }
@@ -28,4 +38,44 @@ class CrateExtension {
     def boolean getDebugLogging() {
         return debugLogging
     }
+
+    def setParallelism(int threads) {
+        parallelism = threads
+    }
+
+    def int getParallelism() {
+        return parallelism
+    }
+
+    def setLazyFolders(boolean enable) {
+        lazyFolders = enable
+    }
+
+    def boolean getLazyFolders() {
+        return lazyFolders
+    }
+
+    def setBinaryIndex(boolean enable) {
+        binaryIndex = enable
+    }
+
+    def boolean getBinaryIndex() {
+        return binaryIndex
+    }
+
+    def setClassOutput(boolean enable) {
+        classOutput = enable
+    }
+
+    def boolean getClassOutput() {
+        return classOutput
+    }
+
+    def setBuildReport(boolean enable) {
+        buildReport = enable
+    }
+
+    def boolean getBuildReport() {
+        return buildReport
+    }
 }
\ No newline at end of file
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.file.FileTree
+import org.gradle.api.tasks.*
+import org.gradle.api.tasks.incremental.IncrementalTaskInputs
+
+/**
+ * Generates the CrateDictionary for a variant from its assets. Only the asset contents and options affecting
+ * the output are inputs, so the result can be restored from the build cache, and incremental builds only probe added
+ * and modified assets again.
+ */
+@CacheableTask
+class CrateGenerateTask extends DefaultTask {
+
+    @Internal
+    File assetDir
+
+    @OutputDirectory
+    File outputDir
+
+    // Binary index, only in binary index mode. Packaged as an extra assets source rather than written into the
+    // merged assets, so the merge task's output is left alone.
+    @Optional
+    @OutputDirectory
+    File indexDir
+
+    // Dictionary class files, only when generating them instead of source
+    @Optional
+    @OutputDirectory
+    File classDir
+
+    // Probe results from previous builds, only used to speed up generation
+    @Internal
+    File cacheDir
+
+    // Output reusable by any variant with identical assets and options
+    @Internal
+    File sharedDir
+
+    // Timings for the last build, or null to skip them
+    @Internal
+    File reportDir
+
+    @Input
+    boolean debugLogging
+
+    @Internal
+    int parallelism
+
+    @Input
+    boolean lazyFolders
+
+    @Input
+    boolean binaryIndex
+
+    // Only takes effect with the binary index, where classDir is then set
+    @Input
+    boolean classOutput
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    FileTree getAssets() {
+        // An index left in the merged assets by an older version mustn't count as one
+        return project.fileTree(assetDir).exclude(AssetIndex.FILE_NAME)
+    }
+
+    @TaskAction
+    void generate(IncrementalTaskInputs inputs) {
+        List<File> changedFiles = null
+        if (inputs.incremental) {
+            changedFiles = new ArrayList<>()
+            inputs.outOfDate { change ->
+                changedFiles.add(change.file)
+            }
+        }
+
+        CrateGenerator generator = new CrateGenerator(outputDir.path, assetDir.path, debugLogging, parallelism,
+                cacheDir.path, sharedDir.path, lazyFolders, binaryIndex, indexDir?.path,
+                classOutput ? classDir?.path : null, reportDir?.path)
+        if (!inputs.incremental) {
+            // Anything stale goes, but the dictionary is only replaced if its content changes
+            File outputFile = generator.outputFile
+            project.delete(project.fileTree(outputDir).exclude { it.file == outputFile })
+        }
+        generator.buildCrate(changedFiles)
+    }
+}
\ No newline at end of file
@@ -20,6 +20,9 @@ import org.gradle.api.Plugin
 import org.gradle.api.Project
 import org.gradle.api.ProjectConfigurationException
 import org.gradle.api.Task
+import org.gradle.api.file.FileTreeElement
+import org.gradle.api.tasks.Sync
+import org.gradle.api.tasks.compile.JavaCompile
 
 class CratePlugin implements Plugin<Project> {
 
@@ -48,39 +51,99 @@ class CratePlugin implements Plugin<Project> {
                 String flavorString = capitalise(variant.flavorName) + capitalise(variant.buildType.name)
 
                 boolean debugLogging = project.crate.debugLogging
+                int parallelism = project.crate.parallelism
+                boolean lazyFolders = project.crate.lazyFolders
+                boolean binaryIndex = project.crate.binaryIndex
+                boolean classOutput = project.crate.classOutput && binaryIndex
+                boolean buildReport = project.crate.buildReport
 
                 String variantBuildDir = "${project.buildDir}/generated/source/crate/${variant.dirName}"
                 String variantAssetDir = "${project.buildDir}/intermediates/assets/${variant.dirName}"
+                String variantSourceAssetDir = "${project.buildDir}/intermediates/crate-assets/${variant.dirName}"
+                String variantIndexDir = "${project.buildDir}/generated/assets/crate/${variant.dirName}"
+                String variantCacheDir = "${project.buildDir}/intermediates/crate/${variant.dirName}"
+                String sharedDir = "${project.buildDir}/intermediates/crate-shared"
+                String variantClassDir = "${project.buildDir}/intermediates/crate-classes/${variant.dirName}"
+                String variantReportDir = "${project.buildDir}/reports/crate/${variant.dirName}"
 
                 // Add source to variant source set
                 variant.sourceSets.each { sourceSet ->
-                    if (sourceSet.name == variant.dirName) {
+                    if (sourceSet.name == variant.name) {
                         sourceSet.java.srcDir "${variantBuildDir}"
+                        if (binaryIndex) {
+                            sourceSet.assets.srcDir "${variantIndexDir}"
+                        }
                     }
                 }
 
-                //noinspection GrUnresolvedAccess,GroovyAssignabilityCheck
-                CrateGenerator generator = new CrateGenerator(variantBuildDir, variantAssetDir, debugLogging)
                 Task mergeAssetsTask = project.tasks["merge${flavorString}Assets"]
-                mergeAssetsTask.doLast {
-                    generator.buildCrate()
-                }
+                CrateGenerateTask crateTask = project.tasks.create("generate${flavorString}Crate", CrateGenerateTask)
+                crateTask.outputDir = project.file(variantBuildDir)
+                crateTask.cacheDir = project.file(variantCacheDir)
+                crateTask.sharedDir = project.file(sharedDir)
+                crateTask.classDir = classOutput ? project.file(variantClassDir) : null
+                crateTask.reportDir = buildReport ? project.file(variantReportDir) : null
+                crateTask.debugLogging = debugLogging
+                crateTask.parallelism = parallelism
+                crateTask.lazyFolders = lazyFolders
+                crateTask.binaryIndex = binaryIndex
+                crateTask.classOutput = classOutput
 
-                variant.preBuild.doFirst {
-                    if (!generator.isCrateHashValid()) {
-                        mergeAssetsTask.outputs.upToDateWhen {
-                            false
+                if (binaryIndex) {
+                    // The index is merged like any other asset, so generation has to come first. Assets are staged
+                    // from the variant's source sets in merge order instead, with later ones overriding earlier ones.
+                    Sync stageTask = project.tasks.create("stage${flavorString}CrateAssets", Sync)
+                    variant.sourceSets.each { sourceSet ->
+                        sourceSet.assetsDirectories.each { dir ->
+                            if (dir != project.file(variantIndexDir)) {
+                                stageTask.from dir
+                            }
                         }
                     }
+                    stageTask.into variantSourceAssetDir
+                    stageTask.exclude { FileTreeElement element -> isIgnoredAsset(element) }
+
+                    crateTask.assetDir = project.file(variantSourceAssetDir)
+                    crateTask.indexDir = project.file(variantIndexDir)
+                    crateTask.dependsOn stageTask
+                    mergeAssetsTask.dependsOn crateTask
+                } else {
+                    crateTask.assetDir = project.file(variantAssetDir)
+                    crateTask.dependsOn mergeAssetsTask
                 }
 
-                variant.javaCompile.dependsOn mergeAssetsTask
-                variant.javaCompile.mustRunAfter mergeAssetsTask
-                variant.registerJavaGeneratingTask(mergeAssetsTask, project.file(variantBuildDir))
+                JavaCompile javaCompile = variant.javaCompile
+                javaCompile.dependsOn crateTask
+                variant.registerJavaGeneratingTask(crateTask, project.file(variantBuildDir))
+
+                if (classOutput) {
+                    // Compiled against like a library, then packaged with the variant's own classes
+                    javaCompile.classpath += project.files(variantClassDir)
+                    javaCompile.doLast {
+                        project.copy {
+                            from variantClassDir
+                            into javaCompile.destinationDir
+                        }
+                    }
+                }
             }
         }
     }
 
+    /**
+     * Mirrors aapt's default ignoreAssetsPattern, so staged assets match what's merged
+     */
+    private static boolean isIgnoredAsset(FileTreeElement element) {
+        String name = element.name.toLowerCase(Locale.US)
+        if (name in ['.svn', '.git', '.ds_store', 'cvs', 'thumbs.db', 'picasa.ini']) {
+            return true
+        } else if (name.startsWith('.') || name.endsWith('~') || name.endsWith('.scc')) {
+            return true
+        } else {
+            return element.directory && name.startsWith('_')
+        }
+    }
+
     private static String capitalise(final String line) {
         if (line == null || line.isEmpty()) {
             return ""
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the binary {@link AssetIndex} as assets are added in ID order. Strings (folder and file names, font names
+ * and codecs) are stored once in a shared table and referenced by position.
+ */
+final class AssetIndexWriter {
+
+    @NonNull
+    private final List<String> mStrings = new ArrayList<>();
+
+    @NonNull
+    private final Map<String, Integer> mStringIds = new HashMap<>();
+
+    @NonNull
+    private final List<int[]> mFolders = new ArrayList<>();
+
+    @NonNull
+    private final List<AssetRow> mAssets = new ArrayList<>();
+
+    @NonNull
+    private final List<FontRow> mFonts = new ArrayList<>();
+
+    @NonNull
+    private final List<VideoRow> mVideos = new ArrayList<>();
+
+
+    /**
+     * @param parent parent folder ID, or -1 for the root folder
+     * @return ID of the new folder
+     */
+    int addFolder(int parent, @NonNull String name) {
+        mFolders.add(new int[]{parent, parent < 0 ? AssetIndex.NO_STRING : getStringId(name)});
+        return mFolders.size() - 1;
+    }
+
+    /**
+     * @return ID of the new asset
+     */
+    int addAsset(int folder, @NonNull String name, int type, boolean gzipped, long length, int width, int height) {
+        mAssets.add(new AssetRow(folder, getStringId(name), type, gzipped ? AssetIndex.FLAG_GZIPPED : 0, length,
+                width, height));
+        return mAssets.size() - 1;
+    }
+
+    /**
+     * @return ID of the new asset
+     */
+    int addFont(int folder,
+                @NonNull String name,
+                boolean gzipped,
+                long length,
+                @NonNull String fontName,
+                @NonNull String familyName,
+                int weight,
+                boolean italic,
+                int unitsPerEm,
+                int ascent,
+                int descent,
+                int glyphCount) {
+        int id = addAsset(folder, name, AssetIndex.TYPE_FONT, gzipped, length, 0, 0);
+        if (italic) {
+            mAssets.get(id).mFlags |= AssetIndex.FLAG_ITALIC;
+        }
+        mFonts.add(new FontRow(getStringId(fontName), getStringId(familyName), weight, unitsPerEm, ascent, descent,
+                glyphCount));
+        return id;
+    }
+
+    /**
+     * @return ID of the new asset
+     */
+    int addVideo(int folder,
+                 @NonNull String name,
+                 boolean gzipped,
+                 long length,
+                 int width,
+                 int height,
+                 int rotation,
+                 float frameRate,
+                 long durationMillis,
+                 long bitRate,
+                 @Nullable String videoCodec,
+                 @Nullable String audioCodec) {
+        int id = addAsset(folder, name, AssetIndex.TYPE_VIDEO, gzipped, length, width, height);
+        mVideos.add(new VideoRow(rotation, frameRate, durationMillis, bitRate, getStringId(videoCodec),
+                getStringId(audioCodec)));
+        return id;
+    }
+
+    int size() {
+        return mAssets.size();
+    }
+
+    /**
+     * @return true if the file was written, false if it already contained this index
+     */
+    boolean write(@NonNull File file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            output.writeInt(AssetIndex.MAGIC);
+            output.writeInt(AssetIndex.VERSION);
+
+            output.writeInt(mStrings.size());
+            for (String string : mStrings) {
+                output.writeUTF(string);
+            }
+
+            output.writeInt(mFolders.size());
+            for (int[] folder : mFolders) {
+                output.writeInt(folder[0]);
+                output.writeInt(folder[1]);
+            }
+
+            // Columns rather than rows, so the reader can fill each array in one pass
+            output.writeInt(mAssets.size());
+            for (AssetRow asset : mAssets) {
+                output.writeByte(asset.mType);
+            }
+            for (AssetRow asset : mAssets) {
+                output.writeByte(asset.mFlags);
+            }
+            for (AssetRow asset : mAssets) {
+                output.writeInt(asset.mFolder);
+            }
+            for (AssetRow asset : mAssets) {
+                output.writeInt(asset.mName);
+            }
+            for (AssetRow asset : mAssets) {
+                output.writeLong(asset.mLength);
+            }
+            for (AssetRow asset : mAssets) {
+                output.writeInt(asset.mWidth);
+            }
+            for (AssetRow asset : mAssets) {
+                output.writeInt(asset.mHeight);
+            }
+
+            output.writeInt(mFonts.size());
+            for (FontRow font : mFonts) {
+                output.writeInt(font.mFontName);
+            }
+            for (FontRow font : mFonts) {
+                output.writeInt(font.mFamilyName);
+            }
+            for (FontRow font : mFonts) {
+                output.writeInt(font.mWeight);
+            }
+            for (FontRow font : mFonts) {
+                output.writeInt(font.mUnitsPerEm);
+            }
+            for (FontRow font : mFonts) {
+                output.writeInt(font.mAscent);
+            }
+            for (FontRow font : mFonts) {
+                output.writeInt(font.mDescent);
+            }
+            for (FontRow font : mFonts) {
+                output.writeInt(font.mGlyphCount);
+            }
+
+            output.writeInt(mVideos.size());
+            for (VideoRow video : mVideos) {
+                output.writeInt(video.mRotation);
+            }
+            for (VideoRow video : mVideos) {
+                output.writeFloat(video.mFrameRate);
+            }
+            for (VideoRow video : mVideos) {
+                output.writeLong(video.mDurationMillis);
+            }
+            for (VideoRow video : mVideos) {
+                output.writeLong(video.mBitRate);
+            }
+            for (VideoRow video : mVideos) {
+                output.writeInt(video.mVideoCodec);
+            }
+            for (VideoRow video : mVideos) {
+                output.writeInt(video.mAudioCodec);
+            }
+        } finally {
+            output.close();
+        }
+
+        return OutputFiles.writeIfChanged(file, bytes.toByteArray());
+    }
+
+    private int getStringId(@Nullable String string) {
+        if (string == null) {
+            return AssetIndex.NO_STRING;
+        }
+
+        Integer id = mStringIds.get(string);
+        if (id == null) {
+            id = mStrings.size();
+            mStrings.add(string);
+            mStringIds.put(string, id);
+        }
+        return id;
+    }
+
+    private static final class AssetRow {
+
+        final int mFolder;
+
+        final int mName;
+
+        final int mType;
+
+        int mFlags;
+
+        final long mLength;
+
+        final int mWidth;
+
+        final int mHeight;
+
+        private AssetRow(int folder, int name, int type, int flags, long length, int width, int height) {
+            mFolder = folder;
+            mName = name;
+            mType = type;
+            mFlags = flags;
+            mLength = length;
+            mWidth = width;
+            mHeight = height;
+        }
+    }
+
+    private static final class FontRow {
+
+        final int mFontName;
+
+        final int mFamilyName;
+
+        final int mWeight;
+
+        final int mUnitsPerEm;
+
+        final int mAscent;
+
+        final int mDescent;
+
+        final int mGlyphCount;
+
+        private FontRow(int fontName, int familyName, int weight, int unitsPerEm, int ascent, int descent,
+                        int glyphCount) {
+            mFontName = fontName;
+            mFamilyName = familyName;
+            mWeight = weight;
+            mUnitsPerEm = unitsPerEm;
+            mAscent = ascent;
+            mDescent = descent;
+            mGlyphCount = glyphCount;
+        }
+    }
+
+    private static final class VideoRow {
+
+        final int mRotation;
+
+        final float mFrameRate;
+
+        final long mDurationMillis;
+
+        final long mBitRate;
+
+        final int mVideoCodec;
+
+        final int mAudioCodec;
+
+        private VideoRow(int rotation, float frameRate, long durationMillis, long bitRate, int videoCodec,
+                         int audioCodec) {
+            mRotation = rotation;
+            mFrameRate = frameRate;
+            mDurationMillis = durationMillis;
+            mBitRate = bitRate;
+            mVideoCodec = videoCodec;
+            mAudioCodec = audioCodec;
+        }
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate;
+
+import android.support.annotation.NonNull;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Locale.US;
+
+/**
+ * Collects timings for a single build, written as {@code crate-report.json} and {@code crate-report.html} to find the
+ * assets which dominate build time. Phases are wall clock times, while walk, sniff and probe times are summed across
+ * all threads, so they can exceed the phase they run in.
+ */
+final class BuildReport {
+
+    static final String JSON_FILE = "crate-report.json";
+    static final String HTML_FILE = "crate-report.html";
+
+    private static final int SLOWEST_COUNT = 20;
+
+    @NonNull
+    private final String mAssetDir;
+
+    private final int mParallelism;
+
+    private final long mStartNanos = System.nanoTime();
+
+    // Phase name to duration, in the order they ran
+    @NonNull
+    private final Map<String, Long> mPhases = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+
+    @NonNull
+    private final AtomicInteger mFolders = new AtomicInteger();
+
+    @NonNull
+    private final AtomicLong mWalkNanos = new AtomicLong();
+
+    @NonNull
+    private final AtomicInteger mSniffed = new AtomicInteger();
+
+    @NonNull
+    private final AtomicLong mSniffNanos = new AtomicLong();
+
+    @NonNull
+    private final Queue<Probe> mProbes = new ConcurrentLinkedQueue<>();
+
+    // Guarded by itself
+    @NonNull
+    private final Map<String, AtomicInteger> mCached = new TreeMap<>();
+
+    private volatile boolean mReusedSharedOutput;
+
+
+    BuildReport(@NonNull String assetDir, int parallelism) {
+        mAssetDir = assetDir;
+        mParallelism = parallelism;
+    }
+
+
+    void addPhase(@NonNull String name, long nanos) {
+        mPhases.put(name, nanos);
+    }
+
+    void addWalk(long nanos) {
+        mFolders.incrementAndGet();
+        mWalkNanos.addAndGet(nanos);
+    }
+
+    void addSniff(long nanos) {
+        mSniffed.incrementAndGet();
+        mSniffNanos.addAndGet(nanos);
+    }
+
+    void addProbe(@NonNull String path, @NonNull String type, long nanos, long bytesRead) {
+        mProbes.add(new Probe(path, type, nanos, bytesRead));
+    }
+
+    void addCached(@NonNull String type) {
+        synchronized (mCached) {
+            AtomicInteger count = mCached.get(type);
+            if (count == null) {
+                count = new AtomicInteger();
+                mCached.put(type, count);
+            }
+            count.incrementAndGet();
+        }
+    }
+
+    void setReusedSharedOutput(boolean reused) {
+        mReusedSharedOutput = reused;
+    }
+
+    void write(@NonNull File directory) throws IOException {
+        long totalNanos = System.nanoTime() - mStartNanos;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory.getPath());
+        }
+
+        List<Probe> probes = new ArrayList<>(mProbes);
+        Map<String, List<Probe>> byType = new TreeMap<>();
+        for (Probe probe : probes) {
+            List<Probe> list = byType.get(probe.mType);
+            if (list == null) {
+                list = new ArrayList<>();
+                byType.put(probe.mType, list);
+            }
+            list.add(probe);
+        }
+        Map<String, AtomicInteger> cachedByType;
+        synchronized (mCached) {
+            cachedByType = new TreeMap<>(mCached);
+        }
+        for (String type : cachedByType.keySet()) {
+            if (!byType.containsKey(type)) {
+                byType.put(type, new ArrayList<Probe>());
+            }
+        }
+
+        List<TypeSummary> summaries = new ArrayList<>(byType.size());
+        for (Map.Entry<String, List<Probe>> entry : byType.entrySet()) {
+            AtomicInteger cached = cachedByType.get(entry.getKey());
+            summaries.add(new TypeSummary(entry.getKey(), entry.getValue(), cached != null ? cached.get() : 0));
+        }
+
+        Collections.sort(probes);
+        List<Probe> slowest = probes.subList(0, Math.min(SLOWEST_COUNT, probes.size()));
+
+        Map<String, Long> phases;
+        synchronized (mPhases) {
+            phases = new LinkedHashMap<>(mPhases);
+        }
+
+        writeFile(new File(directory, JSON_FILE), toJson(totalNanos, phases, summaries, slowest));
+        writeFile(new File(directory, HTML_FILE), toHtml(totalNanos, phases, summaries, slowest));
+    }
+
+    @NonNull
+    private String toJson(long totalNanos,
+                          @NonNull Map<String, Long> phases,
+                          @NonNull List<TypeSummary> summaries,
+                          @NonNull List<Probe> slowest) {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"assetDir\": ").append(quote(mAssetDir)).append(",\n");
+        json.append("  \"parallelism\": ").append(mParallelism).append(",\n");
+        json.append("  \"totalMillis\": ").append(millis(totalNanos)).append(",\n");
+        json.append("  \"reusedSharedOutput\": ").append(mReusedSharedOutput).append(",\n");
+
+        json.append("  \"phases\": [");
+        String separator = "\n";
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            json.append(separator).append("    {\"name\": ").append(quote(phase.getKey()))
+                    .append(", \"millis\": ").append(millis(phase.getValue())).append('}');
+            separator = ",\n";
+        }
+        json.append("\n  ],\n");
+
+        json.append("  \"walk\": {\"folders\": ").append(mFolders.get())
+                .append(", \"millis\": ").append(millis(mWalkNanos.get())).append("},\n");
+        json.append("  \"sniff\": {\"files\": ").append(mSniffed.get())
+                .append(", \"millis\": ").append(millis(mSniffNanos.get())).append("},\n");
+
+        json.append("  \"probes\": [");
+        separator = "\n";
+        for (TypeSummary summary : summaries) {
+            json.append(separator).append("    {\"type\": ").append(quote(summary.mType))
+                    .append(", \"probed\": ").append(summary.mCount)
+                    .append(", \"cached\": ").append(summary.mCached)
+                    .append(", \"bytesRead\": ").append(summary.mBytesRead)
+                    .append(", \"totalMillis\": ").append(millis(summary.mTotalNanos))
+                    .append(", \"p50Micros\": ").append(micros(summary.mP50Nanos))
+                    .append(", \"p95Micros\": ").append(micros(summary.mP95Nanos))
+                    .append(", \"maxMicros\": ").append(micros(summary.mMaxNanos)).append('}');
+            separator = ",\n";
+        }
+        json.append("\n  ],\n");
+
+        json.append("  \"slowest\": [");
+        separator = "\n";
+        for (Probe probe : slowest) {
+            json.append(separator).append("    {\"path\": ").append(quote(probe.mPath))
+                    .append(", \"type\": ").append(quote(probe.mType))
+                    .append(", \"micros\": ").append(micros(probe.mNanos))
+                    .append(", \"bytesRead\": ").append(probe.mBytesRead).append('}');
+            separator = ",\n";
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+    @NonNull
+    private String toHtml(long totalNanos,
+                          @NonNull Map<String, Long> phases,
+                          @NonNull List<TypeSummary> summaries,
+                          @NonNull List<Probe> slowest) {
+        StringBuilder html = new StringBuilder("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n")
+                .append("<title>Crate build report</title>\n")
+                .append("<style>body{font-family:sans-serif}table{border-collapse:collapse;margin-bottom:2em}")
+                .append("th,td{border:1px solid #ccc;padding:4px 8px;text-align:right}")
+                .append("th:first-child,td:first-child{text-align:left}</style>\n</head>\n<body>\n");
+
+        html.append("<h1>Crate build report</h1>\n<p>").append(escape(mAssetDir)).append("<br>\nTotal ")
+                .append(millis(totalNanos)).append(" ms, parallelism ").append(mParallelism)
+                .append(mReusedSharedOutput ? ", reused shared output" : "").append("</p>\n");
+
+        html.append("<h2>Phases</h2>\n<table>\n<tr><th>Phase</th><th>ms</th></tr>\n");
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            row(html, escape(phase.getKey()), millis(phase.getValue()));
+        }
+        html.append("</table>\n");
+
+        html.append("<h2>Work across threads</h2>\n<table>\n<tr><th>Step</th><th>Count</th><th>ms</th></tr>\n");
+        row(html, "Directory walk (folders)", mFolders.get(), millis(mWalkNanos.get()));
+        row(html, "Content sniffing (files)", mSniffed.get(), millis(mSniffNanos.get()));
+        html.append("</table>\n");
+
+        html.append("<h2>Probes by type</h2>\n<table>\n<tr><th>Type</th><th>Probed</th><th>Cached</th>")
+                .append("<th>Bytes read</th><th>Total ms</th><th>p50 &micro;s</th><th>p95 &micro;s</th>")
+                .append("<th>Max &micro;s</th></tr>\n");
+        for (TypeSummary summary : summaries) {
+            row(html, escape(summary.mType), summary.mCount, summary.mCached, summary.mBytesRead,
+                    millis(summary.mTotalNanos), micros(summary.mP50Nanos), micros(summary.mP95Nanos),
+                    micros(summary.mMaxNanos));
+        }
+        html.append("</table>\n");
+
+        html.append("<h2>Slowest files</h2>\n<table>\n<tr><th>Path</th><th>Type</th><th>&micro;s</th>")
+                .append("<th>Bytes read</th></tr>\n");
+        for (Probe probe : slowest) {
+            row(html, escape(probe.mPath), escape(probe.mType), micros(probe.mNanos), probe.mBytesRead);
+        }
+        html.append("</table>\n</body>\n</html>\n");
+        return html.toString();
+    }
+
+    private static void row(@NonNull StringBuilder html, @NonNull Object... cells) {
+        html.append("<tr>");
+        for (Object cell : cells) {
+            html.append("<td>").append(cell).append("</td>");
+        }
+        html.append("</tr>\n");
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    @NonNull
+    private static String quote(@NonNull String value) {
+        StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format(US, "\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    @NonNull
+    private static String escape(@NonNull String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static void writeFile(@NonNull File file, @NonNull String content) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static final class Probe implements Comparable<Probe> {
+
+        @NonNull
+        final String mPath;
+
+        @NonNull
+        final String mType;
+
+        final long mNanos;
+
+        final long mBytesRead;
+
+        private Probe(@NonNull String path, @NonNull String type, long nanos, long bytesRead) {
+            mPath = path;
+            mType = type;
+            mNanos = nanos;
+            mBytesRead = bytesRead;
+        }
+
+        // Slowest first
+        @Override
+        public int compareTo(@NonNull Probe other) {
+            return mNanos > other.mNanos ? -1 : (mNanos == other.mNanos ? 0 : 1);
+        }
+    }
+
+    private static final class TypeSummary {
+
+        @NonNull
+        final String mType;
+
+        final int mCount;
+
+        final int mCached;
+
+        final long mBytesRead;
+
+        final long mTotalNanos;
+
+        final long mP50Nanos;
+
+        final long mP95Nanos;
+
+        final long mMaxNanos;
+
+        private TypeSummary(@NonNull String type, @NonNull List<Probe> probes, int cached) {
+            mType = type;
+            mCount = probes.size();
+            mCached = cached;
+
+            long[] nanos = new long[probes.size()];
+            long bytesRead = 0;
+            long totalNanos = 0;
+            for (int i = 0; i < nanos.length; i++) {
+                Probe probe = probes.get(i);
+                nanos[i] = probe.mNanos;
+                bytesRead += probe.mBytesRead;
+                totalNanos += probe.mNanos;
+            }
+            Arrays.sort(nanos);
+
+            mBytesRead = bytesRead;
+            mTotalNanos = totalNanos;
+            mP50Nanos = percentile(nanos, 50);
+            mP95Nanos = percentile(nanos, 95);
+            mMaxNanos = nanos.length > 0 ? nanos[nanos.length - 1] : 0;
+        }
+
+        // Nearest rank
+        private static long percentile(@NonNull long[] sorted, int percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+            return sorted[Math.max(rank, 1) - 1];
+        }
+    }
+}
@@ -19,21 +19,34 @@ package me.oriley.crate;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
-import com.google.common.base.Function;
 import com.google.common.base.Joiner;
-import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.Files;
 import com.squareup.javapoet.*;
 import me.oriley.crate.mediainfo.CrateMediaInfo;
+import me.oriley.crate.mediainfo.MediaProperties;
+import me.oriley.crate.utils.ContentSniffer;
+import me.oriley.crate.utils.CountingFileChannel;
+import me.oriley.crate.utils.FontTableReader;
+import me.oriley.crate.utils.FontTableReader.FontInfo;
+import me.oriley.crate.utils.ImageHeaderReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.imageio.ImageIO;
-import java.awt.*;
+import javax.lang.model.element.Modifier;
 import java.awt.image.BufferedImage;
 import java.io.*;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 
@@ -56,17 +69,22 @@ public final class CrateGenerator {
     private static final String CRATE_HASH = CrateHasher.getActualHash();
     private static final String ASSETS = "assets";
     private static final String DEBUG = "debug";
+    private static final String BINARY_INDEX = "binaryIndex";
     private static final String CLASS = "Class";
+    private static final String PROBE_CACHE_FILE = "probe-cache.bin";
+    private static final String SHARD = "Shard";
+    private static final String HOLDER = "Holder";
+    private static final String INSTANCE = "INSTANCE";
+    private static final String FULL_LIST_HOLDER = "FullListHolder";
 
-    private static final List<String> FONT_TYPES = Arrays.asList("application/x-font-otf", "application/x-font-ttf");
-    private static final List<String> IMAGE_TYPES = Arrays.asList("image/jpeg", "image/png", "image/pjpeg", "image/gif", "image/bmp", "image/x-windows-bmp", "image/webp");
-    private static final List<String> SVG_TYPES = Arrays.asList("image/svg+xml", "image/svg+xml-compressed");
-    private static final List<String> VIDEO_TYPES = Arrays.asList("video/3gpp", "video/mp4", "video/webm");
+    // Keeps each generated constructor and list method well under the 64KB method size limit, even for video assets
+    private static final int SHARD_SIZE = 1000;
+    private static final int LIST_CHUNK_SIZE = 2000;
 
     private static final Logger log = LoggerFactory.getLogger(CrateGenerator.class.getSimpleName());
 
     @NonNull
-    private final CrateMediaInfo mMediaInfo = new CrateMediaInfo();
+    private final CrateMediaInfo mMediaInfo;
 
     @NonNull
     private final String mBaseOutputDir;
@@ -76,13 +94,78 @@ public final class CrateGenerator {
 
     private final boolean mDebugLogging;
 
+    private final int mParallelism;
+
+    private final boolean mLazyFolders;
+
+    private final boolean mBinaryIndex;
+
+    @NonNull
+    private final File mIndexFile;
+
+    @Nullable
+    private final ProbeCache mProbeCache;
+
+    @Nullable
+    private final SharedOutputStore mSharedOutputs;
+
+    // Only set when generating class files, which requires the binary index
+    @Nullable
+    private final File mClassDir;
+
+    @Nullable
+    private final String mReportDir;
+
+    // Only set while a build with a report directory is running
+    @Nullable
+    private volatile BuildReport mReport;
+
 
     public CrateGenerator(@NonNull String baseOutputDir,
                           @NonNull String variantAssetDir,
                           boolean debugLogging) {
+        this(baseOutputDir, variantAssetDir, debugLogging, 0, null, null, false, false, null, null, null);
+    }
+
+    /**
+     * @param parallelism number of threads to scan and probe with, or 0 to use the number of available processors
+     * @param cacheDir    directory to persist probe results in between builds, or null to always probe every asset
+     * @param sharedDir   directory shared by all variants, where output is kept for reuse by any variant with the same
+     *                    assets and options, or null to always generate
+     * @param lazyFolders generate accessor methods which create each folder class on first use, rather than fields
+     *                    which create the whole tree up front
+     * @param binaryIndex write metadata to a binary {@link AssetIndex} in the assets, and generate int IDs rather
+     *                    than {@link Asset} fields (lazy folders are redundant in this mode, so are ignored)
+     * @param indexDir    directory to write the binary index to, which must be packaged as assets, or null to write
+     *                    it alongside the assets themselves
+     * @param classDir    directory to write the dictionary to as class files rather than source, so it needn't be
+     *                    compiled, or null to generate source. Only supported with the binary index, so ignored
+     *                    otherwise.
+     * @param reportDir   directory to write a timing report for each build to, or null to skip it
+     */
+    public CrateGenerator(@NonNull String baseOutputDir,
+                          @NonNull String variantAssetDir,
+                          boolean debugLogging,
+                          int parallelism,
+                          @Nullable String cacheDir,
+                          @Nullable String sharedDir,
+                          boolean lazyFolders,
+                          boolean binaryIndex,
+                          @Nullable String indexDir,
+                          @Nullable String classDir,
+                          @Nullable String reportDir) {
         mBaseOutputDir = baseOutputDir;
         mVariantAssetDir = variantAssetDir;
         mDebugLogging = debugLogging;
+        mLazyFolders = lazyFolders && !binaryIndex;
+        mBinaryIndex = binaryIndex;
+        mIndexFile = new File(indexDir != null ? indexDir : variantAssetDir, AssetIndex.FILE_NAME);
+        mParallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        mMediaInfo = new CrateMediaInfo(mParallelism);
+        mProbeCache = cacheDir != null ? new ProbeCache(new File(cacheDir, PROBE_CACHE_FILE), CRATE_HASH) : null;
+        mSharedOutputs = sharedDir != null ? new SharedOutputStore(new File(sharedDir)) : null;
+        mClassDir = classDir != null && binaryIndex ? new File(classDir) : null;
+        mReportDir = reportDir;
 
         log("CrateGenerator constructed\n" +
                 "    MediaInfo Support: " + mMediaInfo.isAvailable() + "\n" +
@@ -91,11 +174,27 @@ public final class CrateGenerator {
                 "    Package: " + PACKAGE_NAME + "\n" +
                 "    Class: " + CLASS_NAME + "\n" +
                 "    Static: " + STATIC_MODE + "\n" +
+                "    Lazy: " + mLazyFolders + "\n" +
+                "    Binary Index: " + (mBinaryIndex ? mIndexFile.getPath() : "disabled") + "\n" +
+                "    Class Output: " + (mClassDir != null ? mClassDir.getPath() : "disabled") + "\n" +
+                "    Parallelism: " + mParallelism + "\n" +
+                "    Cache: " + (cacheDir != null ? cacheDir : "disabled") + "\n" +
+                "    Shared: " + (sharedDir != null ? sharedDir : "disabled") + "\n" +
+                "    Report: " + (reportDir != null ? reportDir : "disabled") + "\n" +
                 "    Logging: " + mDebugLogging);
     }
 
 
     public void buildCrate() {
+        buildCrate(null);
+    }
+
+    /**
+     * @param changedFiles assets added or modified since the last build, when known from an incremental build. All
+     *                     other assets are assumed to be unchanged, so their cached probe results are reused without
+     *                     checking the files.
+     */
+    public void buildCrate(@Nullable Collection<File> changedFiles) {
         long startNanos = System.nanoTime();
         File variantDir = new File(mVariantAssetDir);
         if (!variantDir.exists() || !variantDir.isDirectory()) {
@@ -103,20 +202,107 @@ public final class CrateGenerator {
             return;
         }
 
-        try {
-            brewJava(variantDir, mVariantAssetDir, PACKAGE_NAME).writeTo(new File(mBaseOutputDir));
-        } catch (IOException e) {
-            logError("Failed to generate java", e, true);
+        BuildReport report = mReportDir != null ? new BuildReport(mVariantAssetDir, mParallelism) : null;
+        mReport = report;
+
+        if (mProbeCache != null) {
+            mProbeCache.load();
+            if (changedFiles != null) {
+                Set<String> changedPaths = new HashSet<>(changedFiles.size());
+                for (File file : changedFiles) {
+                    changedPaths.add(getAssetPath(file, mVariantAssetDir));
+                }
+                mProbeCache.setChangedPaths(changedPaths);
+            }
+        }
+
+        File javaFile = mClassDir == null ? getOutputFile() : null;
+        if (javaFile == null) {
+            deleteStaleSource(getOutputFile());
+        }
+
+        File indexFile = mIndexFile;
+        long phaseNanos = System.nanoTime();
+        String sharedKey = mSharedOutputs != null ? getSharedKey(variantDir) : null;
+        if (sharedKey != null) {
+            phaseNanos = addPhase(report, "Digest assets", phaseNanos);
+        }
+        if (sharedKey != null
+                && mSharedOutputs.restore(sharedKey, javaFile, mBinaryIndex ? indexFile : null, mClassDir)) {
+            log("Reused shared output " + sharedKey);
+            if (!mBinaryIndex) {
+                deleteStaleIndex(indexFile);
+            }
+            addPhase(report, "Restore shared output", phaseNanos);
+            if (report != null) {
+                report.setReusedSharedOutput(true);
+            }
+        } else {
+            try {
+                FolderNode rootNode = scanFolders(variantDir, mVariantAssetDir);
+                phaseNanos = addPhase(report, "Scan and probe", phaseNanos);
+                if (mClassDir != null) {
+                    Map<String, byte[]> classFiles = brewClasses(rootNode);
+                    phaseNanos = addPhase(report, "Generate classes", phaseNanos);
+                    int written = OutputFiles.writeDirectory(mClassDir, classFiles);
+                    log("Wrote " + written + " of " + classFiles.size() + " classes to " + mClassDir.getPath());
+                    phaseNanos = addPhase(report, "Write classes", phaseNanos);
+                } else {
+                    JavaFile javaOutput = brewJava(rootNode, PACKAGE_NAME);
+                    phaseNanos = addPhase(report, "Generate code", phaseNanos);
+                    byte[] content = javaOutput.toString().getBytes(StandardCharsets.UTF_8);
+                    if (!OutputFiles.writeIfChanged(javaFile, content)) {
+                        log("Output unchanged, kept " + javaFile.getPath());
+                    }
+                    phaseNanos = addPhase(report, "Write source", phaseNanos);
+                }
+                if (sharedKey != null) {
+                    mSharedOutputs.store(sharedKey, javaFile, mBinaryIndex ? indexFile : null, mClassDir);
+                    addPhase(report, "Store shared output", phaseNanos);
+                }
+            } catch (IOException e) {
+                logError("Failed to generate java", e, true);
+            }
+        }
+
+        if (mProbeCache != null) {
+            log("Probe cache hits: " + mProbeCache.getHitCount() + ", misses: " + mProbeCache.getMissCount());
+            mProbeCache.save();
+        }
+
+        // Don't hold on to native handles between builds
+        mMediaInfo.trim();
+
+        if (report != null) {
+            mReport = null;
+            File reportDir = new File(mReportDir);
+            try {
+                report.write(reportDir);
+                log("Wrote build report to " + reportDir.getPath());
+            } catch (IOException e) {
+                logError("Failed to write build report to " + reportDir.getPath(), e, false);
+            }
         }
 
         long lengthMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
         log("Time to build was " + lengthMillis + "ms");
     }
 
+    /**
+     * @return the time now, for the start of the next phase
+     */
+    private static long addPhase(@Nullable BuildReport report, @NonNull String name, long startNanos) {
+        long nowNanos = System.nanoTime();
+        if (report != null) {
+            report.addPhase(name, nowNanos - startNanos);
+        }
+        return nowNanos;
+    }
+
     public boolean isCrateHashValid() {
-        String crateOutputFile = mBaseOutputDir + '/' + PACKAGE_NAME.replace('.', '/') + "/" + CLASS_NAME + ".java";
+        File file = getOutputFile();
+        String crateOutputFile = file.getPath();
         long startNanos = System.nanoTime();
-        File file = new File(crateOutputFile);
 
         boolean returnValue = false;
         if (!file.exists()) {
@@ -132,6 +318,47 @@ public final class CrateGenerator {
         return returnValue;
     }
 
+    /**
+     * @return the generated dictionary source file
+     */
+    @NonNull
+    public File getOutputFile() {
+        return new File(mBaseOutputDir, PACKAGE_NAME.replace('.', '/') + "/" + CLASS_NAME + ".java");
+    }
+
+    /**
+     * Digests the path and content of every asset along with the generator options (everything the output depends
+     * on), hashing folders in parallel. Content digests come from the probe cache where possible.
+     *
+     * @return key for the shared output, or null if an asset couldn't be read
+     */
+    @Nullable
+    private String getSharedKey(@NonNull File variantDir) {
+        long startNanos = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(mParallelism);
+        try {
+            byte[] assetDigest = pool.invoke(new FolderDigestTask(variantDir, true));
+            if (assetDigest == null) {
+                return null;
+            }
+
+            Hasher hasher = Hashing.md5().newHasher();
+            for (String comment : getComments()) {
+                hasher.putString(comment, StandardCharsets.UTF_8);
+            }
+            return hasher.putInt(ProbeCache.VERSION)
+                    .putBoolean(mMediaInfo.isAvailable())
+                    .putBoolean(mClassDir != null)
+                    .putBytes(assetDigest)
+                    .hash()
+                    .toString();
+        } finally {
+            pool.shutdown();
+            long lengthMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            log("Time to digest assets was " + lengthMillis + "ms");
+        }
+    }
+
     private boolean isFileValid(@NonNull File crateOutputFile, @NonNull String[] comments) {
         if (comments.length <= 0) {
             return false;
@@ -177,129 +404,591 @@ public final class CrateGenerator {
         }
     }
 
+    /**
+     * Generates the dictionary from scanned assets (writing the binary index too, in that mode). Package-private, along
+     * with {@link #scanFolders(File, String)} and {@link #probe(File)}, so each phase can be benchmarked on its own.
+     */
     @NonNull
-    private JavaFile brewJava(@NonNull File variantDir,
-                              @NonNull String variantAssetDir,
-                              @NonNull String packageName) {
+    JavaFile brewJava(@NonNull FolderNode rootNode, @NonNull String packageName) {
+        JavaFile.Builder javaBuilder = JavaFile.builder(packageName, brewDictionary(rootNode, buildPathHash(rootNode)))
+                .indent("    ");
+
+        for (String comment : getComments()) {
+            javaBuilder.addFileComment(comment + "\n");
+        }
 
+        return javaBuilder.build();
+    }
+
+    /**
+     * Generates the dictionary as class files (and writes the binary index), skipping source and javac altogether.
+     * Only supported in binary index mode.
+     *
+     * @return class files keyed by their path relative to the class output directory
+     */
+    @NonNull
+    Map<String, byte[]> brewClasses(@NonNull FolderNode rootNode) {
+        if (!mBinaryIndex) {
+            throw new IllegalStateException("Class output requires the binary index");
+        }
+
+        String[] pathHash = buildPathHash(rootNode);
+        return DictionaryClassWriter.toClassFiles(brewDictionary(rootNode, pathHash), PACKAGE_NAME, pathHash);
+    }
+
+    @NonNull
+    private TypeSpec brewDictionary(@NonNull FolderNode rootNode, @NonNull String[] pathHash) {
         TypeSpec.Builder builder = TypeSpec.classBuilder(CLASS_NAME)
                 .addModifiers(PUBLIC, FINAL)
                 .addAnnotation(createSuppressWarningAnnotation("unused"));
 
         builder.addField(createBooleanField(DEBUG, mDebugLogging));
+        builder.addField(createBooleanField(BINARY_INDEX, mBinaryIndex));
 
-        TreeMap<String, Asset> allAssets = new TreeMap<>();
-        listFiles(allAssets, builder, "", variantDir, variantAssetDir, true);
+        builder.addField(createPathHashField(pathHash));
+        builder.addMethod(createAllAssetsMethod(pathHash.length > 0));
 
-        JavaFile.Builder javaBuilder = JavaFile.builder(packageName, builder.build())
-                .indent("    ");
+        File indexFile = mIndexFile;
+        if (mBinaryIndex) {
+            AssetIndexWriter index = new AssetIndexWriter();
+            brewIndexFolder(index, builder, rootNode, index.addFolder(-1, rootNode.mName));
+            long startNanos = System.nanoTime();
+            try {
+                if (index.write(indexFile)) {
+                    log("Wrote binary index of " + index.size() + " assets to " + indexFile.getPath());
+                } else {
+                    log("Binary index unchanged, kept " + indexFile.getPath());
+                }
+            } catch (IOException e) {
+                logError("Failed to write binary index " + indexFile.getPath(), e, true);
+            }
+            BuildReport report = mReport;
+            if (report != null) {
+                report.addPhase("Write binary index", System.nanoTime() - startNanos);
+            }
+        } else {
+            TreeMap<String, String> allAssets = new TreeMap<>();
+            brewFolder(allAssets, builder, rootNode, "");
 
-        for (String comment : getComments()) {
-            javaBuilder.addFileComment(comment + "\n");
+            deleteStaleIndex(indexFile);
         }
 
-        return javaBuilder.build();
+        return builder.build();
+    }
+
+    /**
+     * Removes any index left from a previous build in binary index mode
+     */
+    private void deleteStaleIndex(@NonNull File indexFile) {
+        if (indexFile.exists() && !indexFile.delete()) {
+            log("Failed to delete stale binary index " + indexFile.getPath());
+        }
+    }
+
+    /**
+     * Removes source left from a previous build which didn't generate class files, as the dictionary would
+     * otherwise be defined twice
+     */
+    private static void deleteStaleSource(@NonNull File javaFile) {
+        if (javaFile.exists() && !javaFile.delete()) {
+            throw new IllegalStateException("Crate: Failed to delete stale source " + javaFile.getPath());
+        }
+    }
+
+    private static void collectPaths(@NonNull FolderNode node, @NonNull List<String> paths) {
+        for (FolderNode folder : node.mFolders) {
+            collectPaths(folder, paths);
+        }
+        for (AssetHolder asset : node.mAssets) {
+            paths.add(asset.mPath);
+        }
+    }
+
+    /**
+     * @return {@link PathHash} displacements for every asset, empty if there are none or the hash couldn't be built (in
+     * which case the runtime searches every asset instead)
+     */
+    @NonNull
+    private String[] buildPathHash(@NonNull FolderNode rootNode) {
+        long startNanos = System.nanoTime();
+        List<String> paths = new ArrayList<>();
+        collectPaths(rootNode, paths);
+        String[] chunks = new String[0];
+        if (!paths.isEmpty()) {
+            try {
+                chunks = PathHashBuilder.build(paths);
+            } catch (IllegalStateException e) {
+                log.warn("Crate: Unable to build path hash, find() will search every asset instead", e);
+            }
+        }
+
+        long lengthMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        log("Time to build path hash for " + paths.size() + " assets was " + lengthMillis + "ms");
+        return chunks;
+    }
+
+    /**
+     * Embeds the {@link PathHash} displacements as string constants, which (unlike arrays of primitives) need no
+     * initialisation code and can be read without allocating.
+     */
+    @NonNull
+    private FieldSpec createPathHashField(@NonNull String[] chunks) {
+        List<String> literals = new ArrayList<>(chunks.length);
+        for (String chunk : chunks) {
+            literals.add(toStringLiteral(chunk));
+        }
+
+        return FieldSpec.builder(String[].class, "mPathHash")
+                .initializer("{$L}", Joiner.on(", ").join(literals))
+                .build();
+    }
+
+    /**
+     * Creates a literal which is safe for any char. Unicode escapes are only used above 0xFF, as javac translates them
+     * before parsing (so an escaped quote or line break would end the literal).
+     */
+    @NonNull
+    private static String toStringLiteral(@NonNull String value) {
+        StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x7F && c != '"' && c != '\\') {
+                builder.append(c);
+            } else if (c <= 0xFF) {
+                builder.append(String.format(US, "\\%03o", (int) c));
+            } else {
+                builder.append(String.format(US, "\\u%04x", (int) c));
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    /**
+     * Gives the runtime access to every asset object, whichever mode the dictionary was generated in.
+     */
+    @NonNull
+    private MethodSpec createAllAssetsMethod(boolean hasAssets) {
+        TypeName listType = ParameterizedTypeName.get(ClassName.get(List.class), TypeVariableName.get(Asset.class));
+        MethodSpec.Builder builder = MethodSpec.methodBuilder("getAllAssets")
+                .returns(listType);
+        if (!hasAssets || mBinaryIndex) {
+            builder.addStatement("return $T.emptyList()", Collections.class);
+        } else if (mLazyFolders) {
+            builder.addStatement("return $L.getFullList()", ASSETS);
+        } else {
+            builder.addStatement("return $L.FULL_LIST", ASSETS);
+        }
+        addNullability(builder, NONNULL);
+        return builder.build();
     }
 
     @NonNull
     private String[] getComments() {
         return new String[]{CRATE_HASH, "Package: " + PACKAGE_NAME, "Class: " + CLASS_NAME, "Static: " + STATIC_MODE,
-                "Debug: " + mDebugLogging};
+                "Lazy: " + mLazyFolders, "Binary Index: " + mBinaryIndex, "Debug: " + mDebugLogging};
     }
 
-    private void listFiles(@NonNull TreeMap<String, Asset> allAssets,
-                           @NonNull TypeSpec.Builder parentBuilder,
-                           @NonNull String classPathString,
-                           @NonNull File directory,
-                           @NonNull String variantAssetDir,
-                           boolean root) {
+    @NonNull
+    FolderNode scanFolders(@NonNull File variantDir, @NonNull String variantAssetDir) {
+        long startNanos = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(mParallelism);
+        try {
+            return pool.invoke(new FolderScanTask(variantDir, variantAssetDir, "", true));
+        } finally {
+            pool.shutdown();
+            long lengthMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            log("Time to scan with parallelism " + mParallelism + " was " + lengthMillis + "ms");
+        }
+    }
 
-        String rootName = root ? ASSETS : directory.getName();
-        TypeSpec.Builder builder = TypeSpec.classBuilder(capitalise(rootName + CLASS))
+    /**
+     * @param allAssets map of every asset's path from the root folder, to the expression referencing it from within
+     *                  the root folder class (the same path, unless lazy folders are used)
+     * @param classPath path to this folder class from within the root folder class
+     */
+    private void brewFolder(@NonNull TreeMap<String, String> allAssets,
+                            @NonNull TypeSpec.Builder parentBuilder,
+                            @NonNull FolderNode node,
+                            @NonNull String classPath) {
+
+        String className = capitalise(node.mName + CLASS);
+        TypeSpec.Builder builder = TypeSpec.classBuilder(className)
                 .addModifiers(PUBLIC, STATIC, FINAL);
 
-        List<File> files = getFileList(directory);
         TreeMap<String, Asset> assetMap = new TreeMap<>();
         FolderClass folderClass = FolderClass.NONE;
 
-        for (File file : files) {
-            if (file.isDirectory()) {
-                listFiles(allAssets, builder, classPathString + file.getName() + ".", file, variantAssetDir, false);
+        for (FolderNode folder : node.mFolders) {
+            brewFolder(allAssets, builder, folder, classPath + capitalise(folder.mName + CLASS) + ".");
+        }
+
+        // Lazy folders are singletons, so they can be referenced statically by the full list holder
+        String instancePath = classPath + HOLDER + "." + INSTANCE + ".";
+
+        List<FieldSpec> assetFields = new ArrayList<>(node.mAssets.size());
+        for (AssetHolder asset : node.mAssets) {
+            if (asset instanceof FontAssetHolder) {
+                folderClass = checkFolderClass(folderClass, FolderClass.FONT);
+                assetFields.add(createFontAssetField((FontAssetHolder) asset));
+            } else if (asset instanceof ImageAssetHolder) {
+                folderClass = checkFolderClass(folderClass, FolderClass.IMAGE);
+                assetFields.add(createImageAssetField((ImageAssetHolder) asset));
+            } else if (asset instanceof VideoAssetHolder) {
+                folderClass = checkFolderClass(folderClass, FolderClass.VIDEO);
+                assetFields.add(createVideoAssetField((VideoAssetHolder) asset));
+            } else if (asset instanceof SvgAssetHolder) {
+                folderClass = checkFolderClass(folderClass, FolderClass.SVG);
+                assetFields.add(createSvgAssetField((SvgAssetHolder) asset));
             } else {
-                String fileName = file.getName();
-                String fieldName = sanitiseFieldName(fileName).toUpperCase(US);
-
-                if (assetMap.containsKey(fieldName)) {
-                    String baseFieldName = fieldName + "_";
-                    int counter = 0;
-                    while (assetMap.containsKey(fieldName)) {
-                        fieldName = baseFieldName + counter;
-                    }
-                }
+                folderClass = FolderClass.ASSET;
+                assetFields.add(createAssetField(asset));
+            }
+            assetMap.put(asset.mFieldName, asset);
+            allAssets.put(node.mClassPathString + asset.mFieldName,
+                    mLazyFolders ? instancePath + asset.mFieldName : node.mClassPathString + asset.mFieldName);
+        }
+        addAssetFields(parentBuilder, builder, className, assetFields);
 
-                String contentType = getContentType(file);
-                if (contentType == null) {
-                    contentType = "application/octet-stream";
-                }
+        if (!assetMap.isEmpty()) {
+            TypeName elementType = TypeVariableName.get(getFolderClass(folderClass));
+            addListField(builder, elementType, "LIST", "List", assetMap.keySet(), false);
+        }
 
-                boolean gzipped = isGzipped(file);
-                String filePath = file.getPath().replace(variantAssetDir + "/", "");
-                AssetHolder asset;
-
-                if (FONT_TYPES.contains(contentType)) {
-                    folderClass = checkFolderClass(folderClass, FolderClass.FONT);
-                    String fontName = getFontName(file.getPath());
-                    asset = new FontAssetHolder(fieldName, filePath, gzipped, fontName != null ? fontName : fileName);
-                    builder.addField(createFontAssetField((FontAssetHolder) asset));
-                } else if (IMAGE_TYPES.contains(contentType)) {
-                    folderClass = checkFolderClass(folderClass, FolderClass.IMAGE);
-                    int width = 0;
-                    int height = 0;
-                    try {
-                        BufferedImage image = ImageIO.read(file);
-                        if (image != null) {
-                            width = image.getWidth();
-                            height = image.getHeight();
-                        }
-                    } catch (IOException e) {
-                        logError("Error parsing image: " + file.getPath(), e, false);
-                    }
+        if (node.mRoot && !allAssets.isEmpty()) {
+            if (mLazyFolders) {
+                addLazyFullList(builder, allAssets.values());
+            } else {
+                addListField(builder, TypeVariableName.get(Asset.class), "FULL_LIST", "FullList",
+                        allAssets.values(), false);
+            }
+        }
 
-                    asset = new ImageAssetHolder(fieldName, filePath, gzipped, width, height);
-                    builder.addField(createImageAssetField((ImageAssetHolder) asset));
-                } else if (VIDEO_TYPES.contains(contentType)) {
-                    folderClass = checkFolderClass(folderClass, FolderClass.VIDEO);
-                    int[] dimens = mMediaInfo.getDimensions(file);
-                    asset = new VideoAssetHolder(fieldName, filePath, gzipped, dimens[0], dimens[1]);
-                    builder.addField(createVideoAssetField((VideoAssetHolder) asset));
-                } else if (SVG_TYPES.contains(contentType)) {
-                    folderClass = checkFolderClass(folderClass, FolderClass.SVG);
-                    asset = new SvgAssetHolder(fieldName, filePath, gzipped);
-                    builder.addField(createSvgAssetField((SvgAssetHolder) asset));
-                } else {
-                    folderClass = FolderClass.ASSET;
-                    asset = new AssetHolder(fieldName, filePath, gzipped);
-                    builder.addField(createAssetField(asset));
+        if (mLazyFolders) {
+            builder.addType(createHolderClass(className));
+        }
+        parentBuilder.addType(builder.build());
+
+        if (!mLazyFolders) {
+            parentBuilder.addField(createNonStaticClassField(node.mName));
+        } else if (node.mRoot) {
+            // Root field is kept, as the runtime is compiled against it
+            parentBuilder.addField(createLazyRootField(className));
+        } else {
+            parentBuilder.addMethod(createLazyFolderMethod(node.mName, className));
+        }
+    }
+
+    /**
+     * Generates a folder class of int ID constants, adding the folder's assets to the binary index. IDs are assigned
+     * in the same order as {@link #brewFolder}, so each folder's own assets have a contiguous range of IDs, given by
+     * LIST_START (inclusive) and LIST_END (exclusive).
+     */
+    private void brewIndexFolder(@NonNull AssetIndexWriter index,
+                                 @NonNull TypeSpec.Builder parentBuilder,
+                                 @NonNull FolderNode node,
+                                 int folderId) {
+
+        String className = capitalise(node.mName + CLASS);
+        TypeSpec.Builder builder = TypeSpec.classBuilder(className)
+                .addModifiers(PUBLIC, STATIC, FINAL);
+
+        for (FolderNode folder : node.mFolders) {
+            brewIndexFolder(index, builder, folder, index.addFolder(folderId, folder.mName));
+        }
+
+        int listStart = index.size();
+        List<FieldSpec> assetFields = new ArrayList<>(node.mAssets.size());
+        for (AssetHolder asset : node.mAssets) {
+            long length = new File(mVariantAssetDir, asset.mPath).length();
+            assetFields.add(createIdField(asset.mFieldName, asset.addToIndex(index, folderId, length)));
+        }
+        addAssetFields(parentBuilder, builder, className, assetFields);
+
+        if (!assetFields.isEmpty()) {
+            builder.addField(createIdField("LIST_START", listStart));
+            builder.addField(createIdField("LIST_END", index.size()));
+        }
+
+        parentBuilder.addType(builder.build());
+        parentBuilder.addField(createNonStaticClassField(node.mName));
+    }
+
+    @NonNull
+    private FieldSpec createIdField(@NonNull String fieldName, int id) {
+        return FieldSpec.builder(int.class, fieldName)
+                .addModifiers(PUBLIC, STATIC, FINAL)
+                .initializer("$L", id)
+                .build();
+    }
+
+    /**
+     * Creates the holder for the only instance of a lazy folder class. The JVM won't initialise the holder (and so
+     * won't create the folder and its assets) until it's first accessed, and guarantees that happens only once.
+     */
+    @NonNull
+    private TypeSpec createHolderClass(@NonNull String className) {
+        TypeName typeName = TypeVariableName.get(className);
+        return TypeSpec.classBuilder(HOLDER)
+                .addModifiers(STATIC, FINAL)
+                .addField(FieldSpec.builder(typeName, INSTANCE)
+                        .addModifiers(STATIC, FINAL)
+                        .initializer("new $T()", typeName)
+                        .build())
+                .build();
+    }
+
+    @NonNull
+    private FieldSpec createLazyRootField(@NonNull String className) {
+        TypeName typeName = TypeVariableName.get(className);
+        FieldSpec.Builder builder = FieldSpec.builder(typeName, ASSETS)
+                .addModifiers(PUBLIC, FINAL)
+                .initializer("$T.$L.$L", typeName, HOLDER, INSTANCE);
+        addNullability(builder, NONNULL);
+        return builder.build();
+    }
+
+    @NonNull
+    private MethodSpec createLazyFolderMethod(@NonNull String folderName, @NonNull String className) {
+        TypeName typeName = TypeVariableName.get(className);
+        MethodSpec.Builder builder = MethodSpec.methodBuilder(folderName)
+                .addModifiers(PUBLIC)
+                .returns(typeName)
+                .addStatement("return $T.$L.$L", typeName, HOLDER, INSTANCE);
+        addNullability(builder, NONNULL);
+        return builder.build();
+    }
+
+    /**
+     * Adds getFullList(), backed by a holder so the list (and with it every folder) is only created on first call.
+     */
+    private void addLazyFullList(@NonNull TypeSpec.Builder builder, @NonNull Collection<String> references) {
+        TypeName listType = ParameterizedTypeName.get(ClassName.get(List.class), TypeVariableName.get(Asset.class));
+        TypeSpec.Builder holderBuilder = TypeSpec.classBuilder(FULL_LIST_HOLDER)
+                .addModifiers(STATIC, FINAL);
+        addListField(holderBuilder, TypeVariableName.get(Asset.class), "FULL_LIST", "FullList", references, true);
+        builder.addType(holderBuilder.build());
+
+        MethodSpec.Builder methodBuilder = MethodSpec.methodBuilder("getFullList")
+                .addModifiers(PUBLIC)
+                .returns(listType)
+                .addStatement("return $L.FULL_LIST", FULL_LIST_HOLDER);
+        addNullability(methodBuilder, NONNULL);
+        builder.addMethod(methodBuilder.build());
+    }
+
+    @NonNull
+    private AssetHolder probeFile(@NonNull File file,
+                                  @NonNull String fieldName,
+                                  @NonNull String variantAssetDir) {
+        String filePath = getAssetPath(file, variantAssetDir);
+        if (mProbeCache == null) {
+            return probeAsset(file, fieldName, filePath);
+        }
+
+        byte[] data = mProbeCache.get(filePath, file);
+        if (data != null) {
+            try {
+                AssetHolder asset = readProbeData(data, fieldName, filePath);
+                BuildReport report = mReport;
+                if (report != null) {
+                    report.addCached(asset.getKind().name());
                 }
-                assetMap.put(fieldName, asset);
-                allAssets.put(classPathString + fieldName, asset);
+                return asset;
+            } catch (IOException e) {
+                logError("Invalid cached probe data for " + filePath, e, false);
             }
         }
 
-        if (!assetMap.isEmpty()) {
-            TypeName elementType = TypeVariableName.get(getFolderClass(folderClass));
-            TypeName listType = ParameterizedTypeName.get(ClassName.get(List.class), elementType);
-            builder.addField(createListField(listType, "LIST", assetMap));
+        AssetHolder asset = probeAsset(file, fieldName, filePath);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            asset.writeProbeData(output);
+            output.close();
+            mProbeCache.put(filePath, file, bytes.toByteArray());
+        } catch (IOException e) {
+            logError("Failed to cache probe data for " + filePath, e, false);
+        }
+        return asset;
+    }
+
+    /**
+     * Probes a single file, bypassing the probe cache
+     */
+    @NonNull
+    Asset probe(@NonNull File file) {
+        String fieldName = sanitiseFieldName(file.getName()).toUpperCase(US);
+        return probeAsset(file, fieldName, getAssetPath(file, mVariantAssetDir));
+    }
+
+    @NonNull
+    private static String getAssetPath(@NonNull File file, @NonNull String variantAssetDir) {
+        return file.getPath().replace(variantAssetDir + "/", "");
+    }
+
+    @NonNull
+    private AssetHolder probeAsset(@NonNull File file,
+                                   @NonNull String fieldName,
+                                   @NonNull String filePath) {
+        BuildReport report = mReport;
+        if (report == null) {
+            return probeAsset(file, fieldName, filePath, null);
         }
 
-        if (root && !allAssets.isEmpty()) {
-            TypeName listType = ParameterizedTypeName.get(ClassName.get(List.class),
-                    TypeVariableName.get(Asset.class));
-            builder.addField(createListField(listType, "FULL_LIST", allAssets));
+        long startNanos = System.nanoTime();
+        long[] bytesRead = new long[1];
+        AssetHolder asset = probeAsset(file, fieldName, filePath, bytesRead);
+        report.addProbe(filePath, asset.getKind().name(), System.nanoTime() - startNanos, bytesRead[0]);
+        return asset;
+    }
+
+    /**
+     * @param bytesRead receives the number of bytes read from the file, or null if they don't need counting
+     */
+    @NonNull
+    private AssetHolder probeAsset(@NonNull File file,
+                                   @NonNull String fieldName,
+                                   @NonNull String filePath,
+                                   @Nullable long[] bytesRead) {
+        FileInputStream stream;
+        try {
+            stream = new FileInputStream(file);
+        } catch (IOException e) {
+            logError("Failed to read input stream for " + file.getPath(), e, false);
+            return new AssetHolder(fieldName, filePath, false);
         }
 
-        parentBuilder.addType(builder.build());
-        parentBuilder.addField(createNonStaticClassField(rootName));
+        CountingInputStream countingStream = bytesRead != null ? new CountingInputStream(stream) : null;
+        CountingFileChannel countingChannel = bytesRead != null ? new CountingFileChannel(stream.getChannel()) : null;
+        InputStream input = countingStream != null ? countingStream : stream;
+        FileChannel channel = countingChannel != null ? countingChannel : stream.getChannel();
+
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            // Every probe starts from this one header read, so each file is only opened once
+            byte[] header = new byte[ContentSniffer.HEADER_SIZE];
+            int length = readHeader(input, header);
+            if (!ContentSniffer.isGzipped(header, length)) {
+                return probeAsset(file, fieldName, filePath, false, header, length,
+                        new BufferedInputStream(input), channel);
+            }
+
+            // Only inflate as much of the file as the probes actually read
+            InputStream inflater;
+            try {
+                inflater = new GZIPInputStream(new SequenceInputStream(new ByteArrayInputStream(header, 0, length),
+                        input));
+            } catch (IOException e) {
+                logError("Invalid Gzip header for " + file.getPath(), e, false);
+                return probeAsset(file, fieldName, filePath, true, header, length, null, null);
+            }
+
+            // The magic already marks it as compressed, so a corrupt stream mustn't clear the flag
+            byte[] inflatedHeader = new byte[ContentSniffer.HEADER_SIZE];
+            int inflatedLength;
+            try {
+                inflatedLength = readHeader(inflater, inflatedHeader);
+            } catch (IOException e) {
+                logError("Invalid Gzip content for " + file.getPath(), e, false);
+                return probeAsset(file, fieldName, filePath, true, header, length, null, null);
+            }
+            return probeAsset(file, fieldName, filePath, true, inflatedHeader, inflatedLength, inflater, null);
+        } catch (IOException e) {
+            logError("Failed to read input stream for " + file.getPath(), e, false);
+            return new AssetHolder(fieldName, filePath, false);
+        } finally {
+            if (bytesRead != null) {
+                bytesRead[0] = countingStream.getCount() + countingChannel.getCount();
+            }
+            try {
+                stream.close();
+            } catch (IOException e) {
+                logError("Failed to close input stream for " + file.getPath(), e, false);
+            }
+        }
+    }
+
+    /**
+     * @param header  leading bytes of the (inflated) content
+     * @param content remaining (inflated) content following the header, or null if it can't be read
+     * @param channel channel for random access reads, only available for uncompressed files
+     */
+    @NonNull
+    private AssetHolder probeAsset(@NonNull File file,
+                                   @NonNull String fieldName,
+                                   @NonNull String filePath,
+                                   boolean gzipped,
+                                   @NonNull byte[] header,
+                                   int length,
+                                   @Nullable InputStream content,
+                                   @Nullable FileChannel channel) {
+        String fileName = file.getName();
+        long startNanos = System.nanoTime();
+        ContentSniffer.Kind kind = ContentSniffer.sniff(header, length, fileName);
+        BuildReport report = mReport;
+        if (report != null) {
+            report.addSniff(System.nanoTime() - startNanos);
+        }
+
+        switch (kind) {
+            case FONT:
+                FontInfo info = getFontInfo(file, channel,
+                        content != null ? joinHeader(header, length, content) : null);
+                if (info == null) {
+                    return new FontAssetHolder(fieldName, filePath, gzipped, fileName, fileName, 0, false, 0, 0, 0, 0);
+                }
+
+                String fontName = info.getFullName() != null ? info.getFullName() : fileName;
+                String familyName = info.getFamilyName() != null ? info.getFamilyName() : fontName;
+                return new FontAssetHolder(fieldName, filePath, gzipped, fontName, familyName, info.getWeight(),
+                        info.isItalic(), info.getUnitsPerEm(), info.getAscent(), info.getDescent(),
+                        info.getGlyphCount());
+            case IMAGE:
+                int[] dimens = content != null ? getImageDimensions(file, gzipped, joinHeader(header, length, content))
+                        : new int[2];
+                return new ImageAssetHolder(fieldName, filePath, gzipped, dimens[0], dimens[1]);
+            case VIDEO:
+                // Containers need random access (the index is often at the end), so compressed videos aren't probed
+                MediaProperties properties = channel != null ? mMediaInfo.probe(file, channel) :
+                        new MediaProperties();
+                return new VideoAssetHolder(fieldName, filePath, gzipped, properties.getWidth(),
+                        properties.getHeight(), properties.getRotation(), properties.getFrameRate(),
+                        properties.getDurationMillis(), properties.getBitRate(), properties.getVideoCodec(),
+                        properties.getAudioCodec());
+            case SVG:
+                return new SvgAssetHolder(fieldName, filePath, gzipped);
+            default:
+                return new AssetHolder(fieldName, filePath, gzipped);
+        }
+    }
+
+    @NonNull
+    private static AssetHolder readProbeData(@NonNull byte[] data,
+                                             @NonNull String fieldName,
+                                             @NonNull String filePath) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+        int kind = input.readUnsignedByte();
+        if (kind >= FolderClass.values().length) {
+            throw new IOException("Unknown asset kind " + kind);
+        }
+
+        boolean gzipped = input.readBoolean();
+        switch (FolderClass.values()[kind]) {
+            case FONT:
+                return new FontAssetHolder(fieldName, filePath, gzipped, input.readUTF(), input.readUTF(),
+                        input.readInt(), input.readBoolean(), input.readInt(), input.readInt(), input.readInt(),
+                        input.readInt());
+            case IMAGE:
+                return new ImageAssetHolder(fieldName, filePath, gzipped, input.readInt(), input.readInt());
+            case VIDEO:
+                return new VideoAssetHolder(fieldName, filePath, gzipped, input.readInt(), input.readInt(),
+                        input.readInt(), input.readFloat(), input.readLong(), input.readLong(),
+                        readNullableString(input), readNullableString(input));
+            case SVG:
+                return new SvgAssetHolder(fieldName, filePath, gzipped);
+            default:
+                return new AssetHolder(fieldName, filePath, gzipped);
+        }
     }
 
     @NonNull
@@ -331,59 +1020,134 @@ public final class CrateGenerator {
         }
     }
 
-    private boolean isGzipped(@NonNull File file) {
+    @NonNull
+    private static InputStream joinHeader(@NonNull byte[] header, int length, @NonNull InputStream content) {
+        return new SequenceInputStream(new ByteArrayInputStream(header, 0, length), content);
+    }
+
+    private static int readHeader(@NonNull InputStream stream, @NonNull byte[] header) throws IOException {
+        int length = 0;
+        while (length < header.length) {
+            int read = stream.read(header, length, header.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    @NonNull
+    private int[] getImageDimensions(@NonNull File file, boolean gzipped, @NonNull InputStream stream) {
         try {
-            InputStream stream = new FileInputStream(file);
-            if (!stream.markSupported()) {
-                // We need a a buffered stream so we can use mark() and reset()
-                stream = new BufferedInputStream(stream);
+            int[] dimens = ImageHeaderReader.readDimensions(stream);
+            if (dimens != null) {
+                return dimens;
             }
-            //noinspection TryFinallyCanBeTryWithResources
-            try {
-                stream.mark(3);
-                int firstTwoBytes = stream.read() + (stream.read() << 8);
-                stream.reset();
-                if (firstTwoBytes == GZIPInputStream.GZIP_MAGIC) {
-                    return true;
+        } catch (IOException e) {
+            logError("Error reading image header: " + file.getPath(), e, false);
+        }
+
+        // Unrecognised header, fall back to a full decode
+        int[] dimens = new int[2];
+        try {
+            BufferedImage image;
+            if (gzipped) {
+                InputStream inflater = new GZIPInputStream(new FileInputStream(file));
+                //noinspection TryFinallyCanBeTryWithResources
+                try {
+                    image = ImageIO.read(inflater);
+                } finally {
+                    inflater.close();
                 }
-            } finally {
-                stream.close();
+            } else {
+                image = ImageIO.read(file);
+            }
+            if (image != null) {
+                dimens[0] = image.getWidth();
+                dimens[1] = image.getHeight();
             }
         } catch (IOException e) {
-            logError("Failed to read input stream for " + file.getPath(), e, false);
+            logError("Error parsing image: " + file.getPath(), e, false);
         }
-
-        // Something bad happened or file is not Gzipped
-        return false;
+        return dimens;
     }
 
-    @Nullable
-    private String getContentType(@NonNull File file) {
-        try {
-            return Files.probeContentType(file.toPath());
-        } catch (IOException e) {
-            return null;
+    /**
+     * Adds the asset fields to the folder class. Fields are initialised in the constructor, so large folders have
+     * their fields spread over a chain of package private superclasses (siblings of the folder class, as a class
+     * can't extend its own member), keeping every constructor small while the fields remain accessible as before.
+     */
+    private void addAssetFields(@NonNull TypeSpec.Builder parentBuilder,
+                                @NonNull TypeSpec.Builder builder,
+                                @NonNull String className,
+                                @NonNull List<FieldSpec> assetFields) {
+        List<List<FieldSpec>> shards = Lists.partition(assetFields, SHARD_SIZE);
+        TypeName superclass = null;
+        for (int i = 0; i < shards.size() - 1; i++) {
+            String shardName = className + SHARD + i;
+            TypeSpec.Builder shardBuilder = TypeSpec.classBuilder(shardName)
+                    .addModifiers(STATIC, ABSTRACT)
+                    .addFields(shards.get(i));
+            if (superclass != null) {
+                shardBuilder.superclass(superclass);
+            }
+            parentBuilder.addType(shardBuilder.build());
+            superclass = TypeVariableName.get(shardName);
+        }
+
+        if (superclass != null) {
+            builder.superclass(superclass);
+        }
+        if (!shards.isEmpty()) {
+            builder.addFields(shards.get(shards.size() - 1));
         }
     }
 
-    @NonNull
-    private FieldSpec createListField(@NonNull TypeName typeName,
-                                      @NonNull String fieldName,
-                                      @NonNull Map<String, Asset> assets) {
-        FieldSpec.Builder builder = FieldSpec.builder(typeName, fieldName)
-                .addModifiers(PUBLIC, FINAL);
+    /**
+     * Adds an unmodifiable list of the given assets. Large lists are filled by several private methods rather than
+     * a single initialiser, to stay under the method size limit.
+     */
+    private void addListField(@NonNull TypeSpec.Builder builder,
+                              @NonNull TypeName elementType,
+                              @NonNull String fieldName,
+                              @NonNull String methodSuffix,
+                              @NonNull Collection<String> assetReferences,
+                              boolean isStatic) {
+        TypeName listType = ParameterizedTypeName.get(ClassName.get(List.class), elementType);
+        FieldSpec.Builder fieldBuilder = FieldSpec.builder(listType, fieldName)
+                .addModifiers(isStatic ? new Modifier[]{STATIC, FINAL} : new Modifier[]{PUBLIC, FINAL});
+        Modifier[] methodModifiers = isStatic ? new Modifier[]{PRIVATE, STATIC} : new Modifier[]{PRIVATE};
+
+        List<String> references = new ArrayList<>(assetReferences);
+        if (references.size() <= LIST_CHUNK_SIZE) {
+            builder.addField(fieldBuilder.initializer(CodeBlock.builder()
+                    .add("$T.unmodifiableList($T.asList(", Collections.class, Arrays.class)
+                    .add(Joiner.on(", ").join(references) + "))")
+                    .build())
+                    .build());
+            return;
+        }
 
-        return builder.initializer(CodeBlock.builder()
-                .add("$T.unmodifiableList($T.asList(", Collections.class, Arrays.class)
-                .add(Joiner.on(", ").join(Iterators.transform(assets.entrySet().iterator(),
-                        new Function<Map.Entry<String, Asset>, String>() {
-                            @Override
-                            public String apply(Map.Entry<String, Asset> entry) {
-                                return entry != null ? entry.getKey() : null;
-                            }
-                        })) + "))")
-                .build())
-                .build();
+        String createMethod = "create" + methodSuffix;
+        MethodSpec.Builder createBuilder = MethodSpec.methodBuilder(createMethod)
+                .addModifiers(methodModifiers)
+                .returns(listType)
+                .addStatement("$T list = new $T<>($L)", listType, ArrayList.class, references.size());
+
+        List<List<String>> chunks = Lists.partition(references, LIST_CHUNK_SIZE);
+        for (int i = 0; i < chunks.size(); i++) {
+            String addMethod = "add" + methodSuffix + i;
+            builder.addMethod(MethodSpec.methodBuilder(addMethod)
+                    .addModifiers(methodModifiers)
+                    .addParameter(listType, "list")
+                    .addStatement("$T.addAll(list, " + Joiner.on(", ").join(chunks.get(i)) + ")", Collections.class)
+                    .build());
+            createBuilder.addStatement("$L(list)", addMethod);
+        }
+
+        builder.addMethod(createBuilder.addStatement("return $T.unmodifiableList(list)", Collections.class).build());
+        builder.addField(fieldBuilder.initializer("$L()", createMethod).build());
     }
 
     @NonNull
@@ -453,7 +1217,9 @@ public final class CrateGenerator {
                     boolean o2Directory = o2.isDirectory();
 
                     if ((o1Directory && o2Directory) || (!o1Directory && !o2Directory)) {
-                        return o1.getName().compareToIgnoreCase(o2.getName());
+                        // Names differing only in case still need a fixed order, as it decides their field names
+                        int result = o1.getName().compareToIgnoreCase(o2.getName());
+                        return result != 0 ? result : o1.getName().compareTo(o2.getName());
                     } else {
                         return o1Directory ? -1 : 1;
                     }
@@ -467,14 +1233,17 @@ public final class CrateGenerator {
     }
 
     @Nullable
-    private static String getFontName(@NonNull String filePath) {
+    private FontInfo getFontInfo(@NonNull File file, @Nullable FileChannel channel, @Nullable InputStream stream) {
         try {
-            FileInputStream inputStream = new FileInputStream(filePath);
-            Font font = Font.createFont(Font.TRUETYPE_FONT, inputStream);
-            inputStream.close();
-            return font.getName();
-        } catch (FontFormatException | IOException e) {
-            e.printStackTrace();
+            if (channel != null) {
+                return FontTableReader.read(channel);
+            } else if (stream != null) {
+                return FontTableReader.read(stream);
+            } else {
+                return null;
+            }
+        } catch (IOException e) {
+            logError("Error reading font tables: " + file.getPath(), e, false);
             return null;
         }
     }
@@ -496,6 +1265,225 @@ public final class CrateGenerator {
         }
     }
 
+    static final class FolderNode {
+
+        @NonNull
+        final String mName;
+
+        @NonNull
+        final String mClassPathString;
+
+        final boolean mRoot;
+
+        @NonNull
+        final List<FolderNode> mFolders;
+
+        @NonNull
+        final List<AssetHolder> mAssets;
+
+        private FolderNode(@NonNull String name,
+                           @NonNull String classPathString,
+                           boolean root,
+                           @NonNull List<FolderNode> folders,
+                           @NonNull List<AssetHolder> assets) {
+            mName = name;
+            mClassPathString = classPathString;
+            mRoot = root;
+            mFolders = folders;
+            mAssets = assets;
+        }
+    }
+
+    /**
+     * Lists a single folder, forking a task for each child folder and each file so that probing is spread across
+     * the pool. Results are joined back in listing order so the generated output is identical to a serial scan.
+     */
+    @SuppressWarnings("serial")
+    private final class FolderScanTask extends RecursiveTask<FolderNode> {
+
+        @NonNull
+        private final File mDirectory;
+
+        @NonNull
+        private final String mVariantAssetDir;
+
+        @NonNull
+        private final String mClassPathString;
+
+        private final boolean mRoot;
+
+        private FolderScanTask(@NonNull File directory,
+                               @NonNull String variantAssetDir,
+                               @NonNull String classPathString,
+                               boolean root) {
+            mDirectory = directory;
+            mVariantAssetDir = variantAssetDir;
+            mClassPathString = classPathString;
+            mRoot = root;
+        }
+
+        @Override
+        protected FolderNode compute() {
+            List<FolderScanTask> folderTasks = new ArrayList<>();
+            List<FileProbeTask> fileTasks = new ArrayList<>();
+            Set<String> fieldNames = new HashSet<>();
+
+            long startNanos = System.nanoTime();
+            List<File> files = getFileList(mDirectory);
+            BuildReport report = mReport;
+            if (report != null) {
+                report.addWalk(System.nanoTime() - startNanos);
+            }
+
+            for (File file : files) {
+                if (mRoot && file.getName().equals(AssetIndex.FILE_NAME)) {
+                    // Written by a previous build in binary index mode
+                    continue;
+                } else if (file.isDirectory()) {
+                    folderTasks.add(new FolderScanTask(file, mVariantAssetDir,
+                            mClassPathString + file.getName() + ".", false));
+                } else {
+                    String fieldName = sanitiseFieldName(file.getName()).toUpperCase(US);
+
+                    if (fieldNames.contains(fieldName)) {
+                        String baseFieldName = fieldName + "_";
+                        int counter = 0;
+                        while (fieldNames.contains(fieldName)) {
+                            fieldName = baseFieldName + counter++;
+                        }
+                    }
+
+                    fieldNames.add(fieldName);
+                    fileTasks.add(new FileProbeTask(file, fieldName, mVariantAssetDir));
+                }
+            }
+
+            // Forked together, so files here can be probed while subfolders are still being scanned
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(folderTasks.size() + fileTasks.size());
+            tasks.addAll(folderTasks);
+            tasks.addAll(fileTasks);
+            invokeAll(tasks);
+
+            List<FolderNode> folders = new ArrayList<>(folderTasks.size());
+            for (FolderScanTask task : folderTasks) {
+                folders.add(task.join());
+            }
+
+            List<AssetHolder> assets = new ArrayList<>(fileTasks.size());
+            for (FileProbeTask task : fileTasks) {
+                assets.add(task.join());
+            }
+
+            String name = mRoot ? ASSETS : mDirectory.getName();
+            return new FolderNode(name, mClassPathString, mRoot, folders, assets);
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final class FileProbeTask extends RecursiveTask<AssetHolder> {
+
+        @NonNull
+        private final File mFile;
+
+        @NonNull
+        private final String mFieldName;
+
+        @NonNull
+        private final String mVariantAssetDir;
+
+        private FileProbeTask(@NonNull File file, @NonNull String fieldName, @NonNull String variantAssetDir) {
+            mFile = file;
+            mFieldName = fieldName;
+            mVariantAssetDir = variantAssetDir;
+        }
+
+        @Override
+        protected AssetHolder compute() {
+            return probeFile(mFile, mFieldName, mVariantAssetDir);
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final class FolderDigestTask extends RecursiveTask<byte[]> {
+
+        @NonNull
+        private final File mDirectory;
+
+        private final boolean mRoot;
+
+        private FolderDigestTask(@NonNull File directory, boolean root) {
+            mDirectory = directory;
+            mRoot = root;
+        }
+
+        @Override
+        @Nullable
+        protected byte[] compute() {
+            List<File> files = new ArrayList<>();
+            List<RecursiveTask<byte[]>> tasks = new ArrayList<>();
+            for (File file : getFileList(mDirectory)) {
+                if (mRoot && file.getName().equals(AssetIndex.FILE_NAME)) {
+                    continue;
+                }
+                files.add(file);
+                tasks.add(file.isDirectory() ? new FolderDigestTask(file, false) : new FileDigestTask(file));
+            }
+
+            invokeAll(tasks);
+
+            Hasher hasher = Hashing.md5().newHasher();
+            for (int i = 0; i < files.size(); i++) {
+                byte[] digest = tasks.get(i).join();
+                if (digest == null) {
+                    return null;
+                }
+                hasher.putString(files.get(i).getName(), StandardCharsets.UTF_8)
+                        .putBoolean(files.get(i).isDirectory())
+                        .putBytes(digest);
+            }
+            return hasher.hash().asBytes();
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final class FileDigestTask extends RecursiveTask<byte[]> {
+
+        @NonNull
+        private final File mFile;
+
+        private FileDigestTask(@NonNull File file) {
+            mFile = file;
+        }
+
+        @Override
+        @Nullable
+        protected byte[] compute() {
+            if (mProbeCache != null) {
+                return mProbeCache.getDigest(getAssetPath(mFile, mVariantAssetDir), mFile);
+            }
+
+            try {
+                return Files.asByteSource(mFile).hash(Hashing.md5()).asBytes();
+            } catch (IOException e) {
+                logError("Failed to digest " + mFile.getPath(), e, false);
+                return null;
+            }
+        }
+    }
+
+    @Nullable
+    private static String readNullableString(@NonNull DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    private static void writeNullableString(@NonNull DataOutputStream output,
+                                            @Nullable String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
     @SuppressWarnings("unused")
     private static class AssetHolder extends Asset {
 
@@ -512,6 +1500,23 @@ public final class CrateGenerator {
         public void addInitialiser(@NonNull FieldSpec.Builder builder) {
             builder.initializer("new $T($S, $L)", Asset.class, mPath, mGzipped);
         }
+
+        @NonNull
+        FolderClass getKind() {
+            return FolderClass.ASSET;
+        }
+
+        void writeProbeData(@NonNull DataOutputStream output) throws IOException {
+            output.writeByte(getKind().ordinal());
+            output.writeBoolean(mGzipped);
+        }
+
+        /**
+         * @return the ID of this asset in the index
+         */
+        int addToIndex(@NonNull AssetIndexWriter index, int folder, long length) {
+            return index.addAsset(folder, getName(), AssetIndex.TYPE_ASSET, mGzipped, length, 0, 0);
+        }
     }
 
     @SuppressWarnings("unused")
@@ -520,16 +1525,71 @@ public final class CrateGenerator {
         @NonNull
         final String mFontName;
 
+        @NonNull
+        final String mFamilyName;
+
+        final int mWeight;
+
+        final boolean mItalic;
+
+        final int mUnitsPerEm;
+
+        final int mAscent;
+
+        final int mDescent;
+
+        final int mGlyphCount;
+
         private FontAssetHolder(@NonNull String fieldName,
                                 @NonNull String path,
                                 boolean gzipped,
-                                @NonNull String fontName) {
+                                @NonNull String fontName,
+                                @NonNull String familyName,
+                                int weight,
+                                boolean italic,
+                                int unitsPerEm,
+                                int ascent,
+                                int descent,
+                                int glyphCount) {
             super(fieldName, path, gzipped);
             mFontName = fontName;
+            mFamilyName = familyName;
+            mWeight = weight;
+            mItalic = italic;
+            mUnitsPerEm = unitsPerEm;
+            mAscent = ascent;
+            mDescent = descent;
+            mGlyphCount = glyphCount;
         }
 
         public void addInitialiser(@NonNull FieldSpec.Builder builder) {
-            builder.initializer("new $T($S, $L, $S)", FontAsset.class, mPath, mGzipped, mFontName);
+            builder.initializer("new $T($S, $L, $S, $S, $L, $L, $L, $L, $L, $L)", FontAsset.class, mPath, mGzipped,
+                    mFontName, mFamilyName, mWeight, mItalic, mUnitsPerEm, mAscent, mDescent, mGlyphCount);
+        }
+
+        @NonNull
+        @Override
+        FolderClass getKind() {
+            return FolderClass.FONT;
+        }
+
+        @Override
+        void writeProbeData(@NonNull DataOutputStream output) throws IOException {
+            super.writeProbeData(output);
+            output.writeUTF(mFontName);
+            output.writeUTF(mFamilyName);
+            output.writeInt(mWeight);
+            output.writeBoolean(mItalic);
+            output.writeInt(mUnitsPerEm);
+            output.writeInt(mAscent);
+            output.writeInt(mDescent);
+            output.writeInt(mGlyphCount);
+        }
+
+        @Override
+        int addToIndex(@NonNull AssetIndexWriter index, int folder, long length) {
+            return index.addFont(folder, getName(), mGzipped, length, mFontName, mFamilyName, mWeight, mItalic,
+                    mUnitsPerEm, mAscent, mDescent, mGlyphCount);
         }
     }
 
@@ -553,6 +1613,24 @@ public final class CrateGenerator {
         public void addInitialiser(@NonNull FieldSpec.Builder builder) {
             builder.initializer("new $T($S, $L, $L, $L)", ImageAsset.class, mPath, mGzipped, mWidth, mHeight);
         }
+
+        @NonNull
+        @Override
+        FolderClass getKind() {
+            return FolderClass.IMAGE;
+        }
+
+        @Override
+        void writeProbeData(@NonNull DataOutputStream output) throws IOException {
+            super.writeProbeData(output);
+            output.writeInt(mWidth);
+            output.writeInt(mHeight);
+        }
+
+        @Override
+        int addToIndex(@NonNull AssetIndexWriter index, int folder, long length) {
+            return index.addAsset(folder, getName(), AssetIndex.TYPE_IMAGE, mGzipped, length, mWidth, mHeight);
+        }
     }
 
     @SuppressWarnings("unused")
@@ -562,18 +1640,70 @@ public final class CrateGenerator {
 
         final int mHeight;
 
+        final int mRotation;
+
+        final float mFrameRate;
+
+        final long mDurationMillis;
+
+        final long mBitRate;
+
+        @Nullable
+        final String mVideoCodec;
+
+        @Nullable
+        final String mAudioCodec;
+
         private VideoAssetHolder(@NonNull String fieldName,
                                  @NonNull String path,
                                  boolean gzipped,
                                  int width,
-                                 int height) {
+                                 int height,
+                                 int rotation,
+                                 float frameRate,
+                                 long durationMillis,
+                                 long bitRate,
+                                 @Nullable String videoCodec,
+                                 @Nullable String audioCodec) {
             super(fieldName, path, gzipped);
             mWidth = width;
             mHeight = height;
+            mRotation = rotation;
+            mFrameRate = frameRate;
+            mDurationMillis = durationMillis;
+            mBitRate = bitRate;
+            mVideoCodec = videoCodec;
+            mAudioCodec = audioCodec;
         }
 
         public void addInitialiser(@NonNull FieldSpec.Builder builder) {
-            builder.initializer("new $T($S, $L, $L, $L)", VideoAsset.class, mPath, mGzipped, mWidth, mHeight);
+            builder.initializer("new $T($S, $L, $L, $L, $L, $Lf, $LL, $LL, $S, $S)", VideoAsset.class, mPath, mGzipped,
+                    mWidth, mHeight, mRotation, mFrameRate, mDurationMillis, mBitRate, mVideoCodec, mAudioCodec);
+        }
+
+        @NonNull
+        @Override
+        FolderClass getKind() {
+            return FolderClass.VIDEO;
+        }
+
+        @Override
+        void writeProbeData(@NonNull DataOutputStream output) throws IOException {
+            super.writeProbeData(output);
+            output.writeInt(mWidth);
+            output.writeInt(mHeight);
+            output.writeInt(mRotation);
+            output.writeFloat(mFrameRate);
+            output.writeLong(mDurationMillis);
+            output.writeLong(mBitRate);
+            writeNullableString(output, mVideoCodec);
+            writeNullableString(output, mAudioCodec);
+        }
+
+        @Override
+        int addToIndex(@NonNull AssetIndexWriter index, int folder, long length) {
+            return index.addVideo(folder, getName(), mGzipped, length, mWidth, mHeight, mRotation, mFrameRate,
+                    mDurationMillis, mBitRate, mVideoCodec, mAudioCodec);
         }
     }
 
@@ -589,5 +1719,16 @@ public final class CrateGenerator {
         public void addInitialiser(@NonNull FieldSpec.Builder builder) {
             builder.initializer("new $T($S, $L)", SvgAsset.class, mPath, mGzipped);
         }
+
+        @NonNull
+        @Override
+        FolderClass getKind() {
+            return FolderClass.SVG;
+        }
+
+        @Override
+        int addToIndex(@NonNull AssetIndexWriter index, int folder, long length) {
+            return index.addAsset(folder, getName(), AssetIndex.TYPE_SVG, mGzipped, length, 0, 0);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,406 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.squareup.javapoet.*;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+
+import javax.lang.model.element.Modifier;
+import java.util.*;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Translates the dictionary generated in binary index mode straight to class files, so javac never has to parse and
+ * compile it. This mode only generates int constants, folder instance fields and a few fixed members in the root
+ * class, so that's all which is supported. Anything else fails loudly rather than producing a broken class.
+ * <p>
+ * Classes target Java 6, which needs no stack map frames and is accepted by every version of dx.
+ */
+final class DictionaryClassWriter {
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String CONSTRUCTOR = "<init>";
+    private static final String NO_ARGS = "()V";
+    private static final String ALL_ASSETS_METHOD = "getAllAssets";
+
+    @NonNull
+    private final String mPackagePath;
+
+    @NonNull
+    private final String[] mPathHash;
+
+    // Nested class internal name to the inner class attribute entry describing it
+    @NonNull
+    private final Map<String, InnerClass> mInnerClasses = new HashMap<>();
+
+    @NonNull
+    private final Map<String, byte[]> mClassFiles = new LinkedHashMap<>();
+
+
+    private DictionaryClassWriter(@NonNull String packageName, @NonNull String[] pathHash) {
+        mPackagePath = packageName.replace('.', '/');
+        mPathHash = pathHash;
+    }
+
+
+    /**
+     * @param pathHash values of the root's {@code String[]} field, which is initialised from these rather than by
+     *                 parsing its source initialiser
+     * @return class files keyed by their path relative to the class output directory
+     */
+    @NonNull
+    static Map<String, byte[]> toClassFiles(@NonNull TypeSpec dictionary,
+                                            @NonNull String packageName,
+                                            @NonNull String[] pathHash) {
+        DictionaryClassWriter writer = new DictionaryClassWriter(packageName, pathHash);
+        String rootName = writer.mPackagePath + "/" + dictionary.name;
+        writer.collectInnerClasses(dictionary, rootName);
+        writer.writeClass(dictionary, rootName, Collections.singletonList(dictionary),
+                Collections.singletonList(rootName));
+        return writer.mClassFiles;
+    }
+
+    private void collectInnerClasses(@NonNull TypeSpec type, @NonNull String internalName) {
+        for (TypeSpec member : type.typeSpecs) {
+            String memberName = internalName + "$" + member.name;
+            mInnerClasses.put(memberName, new InnerClass(memberName, internalName, member.name,
+                    getAccess(member.modifiers, false)));
+            collectInnerClasses(member, memberName);
+        }
+    }
+
+    /**
+     * @param scope      the type being written and its enclosing types, innermost first, to resolve type names
+     * @param scopeNames internal names of each type in the scope
+     */
+    private void writeClass(@NonNull TypeSpec type,
+                            @NonNull String internalName,
+                            @NonNull List<TypeSpec> scope,
+                            @NonNull List<String> scopeNames) {
+        if (type.kind != TypeSpec.Kind.CLASS) {
+            throw new IllegalStateException("Unsupported kind " + type.kind + " of " + internalName);
+        }
+
+        String superName = type.superclass.equals(TypeName.OBJECT) ? OBJECT :
+                resolve(type.superclass, scope, scopeNames);
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(V1_6, getAccess(type.modifiers, true) | ACC_SUPER, internalName, null, superName, null);
+
+        Set<String> innerClasses = new LinkedHashSet<>();
+        addInnerClass(innerClasses, internalName);
+        addInnerClass(innerClasses, superName);
+        for (TypeSpec member : type.typeSpecs) {
+            addInnerClass(innerClasses, internalName + "$" + member.name);
+        }
+
+        List<FieldSpec> instanceFields = new ArrayList<>();
+        for (FieldSpec field : type.fieldSpecs) {
+            String descriptor = getDescriptor(field.type, scope, scopeNames);
+            addInnerClass(innerClasses, getInternalName(descriptor));
+
+            Object constant = null;
+            if (field.modifiers.contains(Modifier.STATIC)) {
+                if (!field.modifiers.contains(Modifier.FINAL) || !field.type.equals(TypeName.INT)) {
+                    throw new IllegalStateException("Unsupported static field " + internalName + "." + field.name);
+                }
+                constant = Integer.parseInt(field.initializer.toString());
+            } else if (!field.initializer.isEmpty()) {
+                instanceFields.add(field);
+            }
+
+            FieldVisitor visitor = writer.visitField(getAccess(field.modifiers, false), field.name, descriptor,
+                    null, constant);
+            for (AnnotationSpec annotation : field.annotations) {
+                addAnnotation(visitor, annotation, scope, scopeNames);
+            }
+            visitor.visitEnd();
+        }
+
+        writeConstructor(writer, type, internalName, superName, instanceFields, scope, scopeNames);
+
+        for (MethodSpec method : type.methodSpecs) {
+            writeAllAssetsMethod(writer, method, internalName, scope, scopeNames);
+        }
+
+        for (String innerClass : innerClasses) {
+            InnerClass entry = mInnerClasses.get(innerClass);
+            writer.visitInnerClass(entry.mName, entry.mOuterName, entry.mSimpleName, entry.mAccess);
+        }
+        writer.visitEnd();
+        mClassFiles.put(internalName + ".class", writer.toByteArray());
+
+        for (TypeSpec member : type.typeSpecs) {
+            List<TypeSpec> memberScope = new ArrayList<>(scope.size() + 1);
+            memberScope.add(member);
+            memberScope.addAll(scope);
+            List<String> memberScopeNames = new ArrayList<>(scopeNames.size() + 1);
+            memberScopeNames.add(internalName + "$" + member.name);
+            memberScopeNames.addAll(scopeNames);
+            writeClass(member, memberScopeNames.get(0), memberScope, memberScopeNames);
+        }
+    }
+
+    /**
+     * Writes the default constructor, which also runs the instance field initialisers (as javac would)
+     */
+    private void writeConstructor(@NonNull ClassWriter writer,
+                                  @NonNull TypeSpec type,
+                                  @NonNull String internalName,
+                                  @NonNull String superName,
+                                  @NonNull List<FieldSpec> instanceFields,
+                                  @NonNull List<TypeSpec> scope,
+                                  @NonNull List<String> scopeNames) {
+        int access = type.modifiers.contains(Modifier.PUBLIC) ? ACC_PUBLIC : 0;
+        MethodVisitor method = writer.visitMethod(access, CONSTRUCTOR, NO_ARGS, null, null);
+        method.visitCode();
+        method.visitVarInsn(ALOAD, 0);
+        method.visitMethodInsn(INVOKESPECIAL, superName, CONSTRUCTOR, NO_ARGS, false);
+
+        for (FieldSpec field : instanceFields) {
+            String descriptor = getDescriptor(field.type, scope, scopeNames);
+            method.visitVarInsn(ALOAD, 0);
+            if (field.type.equals(TypeName.BOOLEAN)) {
+                method.visitInsn(Boolean.parseBoolean(field.initializer.toString()) ? ICONST_1 : ICONST_0);
+            } else if (field.type.equals(ArrayTypeName.of(String.class))) {
+                pushInt(method, mPathHash.length);
+                method.visitTypeInsn(ANEWARRAY, "java/lang/String");
+                for (int i = 0; i < mPathHash.length; i++) {
+                    method.visitInsn(DUP);
+                    pushInt(method, i);
+                    method.visitLdcInsn(mPathHash[i]);
+                    method.visitInsn(AASTORE);
+                }
+            } else if (field.type instanceof TypeVariableName
+                    && field.initializer.toString().equals("new " + ((TypeVariableName) field.type).name + "()")) {
+                String fieldClass = getInternalName(descriptor);
+                method.visitTypeInsn(NEW, fieldClass);
+                method.visitInsn(DUP);
+                method.visitMethodInsn(INVOKESPECIAL, fieldClass, CONSTRUCTOR, NO_ARGS, false);
+            } else {
+                throw new IllegalStateException("Unsupported field " + internalName + "." + field.name);
+            }
+            method.visitFieldInsn(PUTFIELD, internalName, field.name, descriptor);
+        }
+
+        method.visitInsn(RETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+    }
+
+    /**
+     * There are no asset objects in binary index mode, so the only method always returns an empty list
+     */
+    private void writeAllAssetsMethod(@NonNull ClassWriter writer,
+                                      @NonNull MethodSpec spec,
+                                      @NonNull String internalName,
+                                      @NonNull List<TypeSpec> scope,
+                                      @NonNull List<String> scopeNames) {
+        if (!spec.name.equals(ALL_ASSETS_METHOD) || !spec.parameters.isEmpty()) {
+            throw new IllegalStateException("Unsupported method " + internalName + "." + spec.name);
+        }
+
+        String descriptor = "()" + getDescriptor(spec.returnType, scope, scopeNames);
+        String signature = "()" + getSignature(spec.returnType, scope, scopeNames);
+        MethodVisitor method = writer.visitMethod(getAccess(spec.modifiers, false), spec.name, descriptor, signature,
+                null);
+        for (AnnotationSpec annotation : spec.annotations) {
+            addAnnotation(method, annotation, scope, scopeNames);
+        }
+        method.visitCode();
+        method.visitMethodInsn(INVOKESTATIC, "java/util/Collections", "emptyList", "()Ljava/util/List;", false);
+        method.visitInsn(ARETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+    }
+
+    /**
+     * Annotations on generated members are markers such as {@code @NonNull}, kept in the class file for lint.
+     * {@code @SuppressWarnings} only applies to source, so it's dropped.
+     */
+    private void addAnnotation(@NonNull Object visitor,
+                               @NonNull AnnotationSpec annotation,
+                               @NonNull List<TypeSpec> scope,
+                               @NonNull List<String> scopeNames) {
+        if (annotation.type.equals(ClassName.get(SuppressWarnings.class))) {
+            return;
+        }
+        if (!annotation.members.isEmpty()) {
+            throw new IllegalStateException("Unsupported annotation " + annotation);
+        }
+
+        String descriptor = getDescriptor(annotation.type, scope, scopeNames);
+        if (visitor instanceof FieldVisitor) {
+            ((FieldVisitor) visitor).visitAnnotation(descriptor, false).visitEnd();
+        } else {
+            ((MethodVisitor) visitor).visitAnnotation(descriptor, false).visitEnd();
+        }
+    }
+
+    /**
+     * Adds the inner class attribute entries for a class and its enclosing classes, if it's nested
+     */
+    private void addInnerClass(@NonNull Set<String> innerClasses, @Nullable String internalName) {
+        InnerClass entry = internalName != null ? mInnerClasses.get(internalName) : null;
+        if (entry != null && innerClasses.add(internalName)) {
+            addInnerClass(innerClasses, entry.mOuterName);
+        }
+    }
+
+    @NonNull
+    private String getDescriptor(@NonNull TypeName type,
+                                 @NonNull List<TypeSpec> scope,
+                                 @NonNull List<String> scopeNames) {
+        if (type.equals(TypeName.INT)) {
+            return "I";
+        } else if (type.equals(TypeName.BOOLEAN)) {
+            return "Z";
+        } else if (type instanceof ArrayTypeName) {
+            return "[" + getDescriptor(((ArrayTypeName) type).componentType, scope, scopeNames);
+        } else if (type instanceof ParameterizedTypeName) {
+            return getDescriptor(((ParameterizedTypeName) type).rawType, scope, scopeNames);
+        } else {
+            return "L" + resolve(type, scope, scopeNames) + ";";
+        }
+    }
+
+    @NonNull
+    private String getSignature(@NonNull TypeName type,
+                                @NonNull List<TypeSpec> scope,
+                                @NonNull List<String> scopeNames) {
+        if (!(type instanceof ParameterizedTypeName)) {
+            return getDescriptor(type, scope, scopeNames);
+        }
+
+        ParameterizedTypeName parameterized = (ParameterizedTypeName) type;
+        String rawDescriptor = getDescriptor(parameterized.rawType, scope, scopeNames);
+        StringBuilder signature = new StringBuilder(rawDescriptor.substring(0, rawDescriptor.length() - 1))
+                .append('<');
+        for (TypeName argument : parameterized.typeArguments) {
+            signature.append(getSignature(argument, scope, scopeNames));
+        }
+        return signature.append(">;").toString();
+    }
+
+    /**
+     * Resolves a class name to its internal name. The generator refers to its own classes by simple name (as type
+     * variables), which are resolved like javac would: members of the innermost enclosing class first, falling back
+     * to a top level class in the same package.
+     */
+    @NonNull
+    private String resolve(@NonNull TypeName type, @NonNull List<TypeSpec> scope, @NonNull List<String> scopeNames) {
+        if (type instanceof ClassName) {
+            ClassName className = (ClassName) type;
+            return className.reflectionName().replace('.', '/');
+        } else if (!(type instanceof TypeVariableName)) {
+            throw new IllegalStateException("Unsupported type " + type);
+        }
+
+        String name = ((TypeVariableName) type).name;
+        for (int i = 0; i < scope.size(); i++) {
+            for (TypeSpec member : scope.get(i).typeSpecs) {
+                if (member.name.equals(name)) {
+                    return scopeNames.get(i) + "$" + name;
+                }
+            }
+        }
+        return mPackagePath + "/" + name;
+    }
+
+    @Nullable
+    private static String getInternalName(@NonNull String descriptor) {
+        return descriptor.startsWith("L") ? descriptor.substring(1, descriptor.length() - 1) : null;
+    }
+
+    /**
+     * @param classFile true for the flags of a class itself, which can only be public or package private (the
+     *                  modifiers of a nested class are recorded in the inner class attribute instead, like members)
+     */
+    private static int getAccess(@NonNull Set<Modifier> modifiers, boolean classFile) {
+        int access = 0;
+        for (Modifier modifier : modifiers) {
+            switch (modifier) {
+                case PUBLIC:
+                    access |= ACC_PUBLIC;
+                    break;
+                case PROTECTED:
+                    access |= classFile ? ACC_PUBLIC : ACC_PROTECTED;
+                    break;
+                case PRIVATE:
+                    access |= classFile ? 0 : ACC_PRIVATE;
+                    break;
+                case STATIC:
+                    access |= classFile ? 0 : ACC_STATIC;
+                    break;
+                case FINAL:
+                    access |= ACC_FINAL;
+                    break;
+                case ABSTRACT:
+                    access |= ACC_ABSTRACT;
+                    break;
+                case VOLATILE:
+                    access |= ACC_VOLATILE;
+                    break;
+                case TRANSIENT:
+                    access |= ACC_TRANSIENT;
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported modifier " + modifier);
+            }
+        }
+        return access;
+    }
+
+    private static void pushInt(@NonNull MethodVisitor method, int value) {
+        if (value >= -1 && value <= 5) {
+            method.visitInsn(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            method.visitIntInsn(BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            method.visitIntInsn(SIPUSH, value);
+        } else {
+            method.visitLdcInsn(value);
+        }
+    }
+
+    private static final class InnerClass {
+
+        @NonNull
+        final String mName;
+
+        @NonNull
+        final String mOuterName;
+
+        @NonNull
+        final String mSimpleName;
+
+        final int mAccess;
+
+        private InnerClass(@NonNull String name, @NonNull String outerName, @NonNull String simpleName, int access) {
+            mName = name;
+            mOuterName = outerName;
+            mSimpleName = simpleName;
+            mAccess = access;
+        }
+    }
+}
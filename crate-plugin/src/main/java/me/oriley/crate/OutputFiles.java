@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate;
+
+import android.support.annotation.NonNull;
+
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Writes generated files only when their content changes, so their timestamps (and everything downstream which
+ * checks them, such as javac and dexing) are left alone when a build produces identical output.
+ */
+final class OutputFiles {
+
+    private OutputFiles() {
+        throw new IllegalAccessError("no instances");
+    }
+
+    /**
+     * @return true if the file was written, false if it already had this content
+     */
+    static boolean writeIfChanged(@NonNull File file, @NonNull byte[] content) throws IOException {
+        if (hasContent(file, content)) {
+            return false;
+        }
+
+        // Written alongside and renamed into place, so readers never see a partial file
+        Files.createParentDirs(file);
+        File tempFile = new File(file.getPath() + ".tmp");
+        Files.write(content, tempFile);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to replace " + file.getPath());
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Unable to rename " + tempFile.getPath());
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the destination was written, false if it already had the same content
+     */
+    static boolean copyIfChanged(@NonNull File from, @NonNull File to) throws IOException {
+        return writeIfChanged(to, Files.toByteArray(from));
+    }
+
+    /**
+     * Makes a directory contain exactly the given files, writing those which changed and deleting any others.
+     *
+     * @param files content keyed by path relative to the directory, using '/' separators
+     * @return number of files written
+     */
+    static int writeDirectory(@NonNull File directory, @NonNull Map<String, byte[]> files) throws IOException {
+        int written = 0;
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            if (writeIfChanged(new File(directory, file.getKey()), file.getValue())) {
+                written++;
+            }
+        }
+
+        for (String path : listFiles(directory)) {
+            if (!files.containsKey(path) && !new File(directory, path).delete()) {
+                throw new IOException("Unable to delete " + path + " from " + directory.getPath());
+            }
+        }
+        return written;
+    }
+
+    /**
+     * @return content of every file in the directory, keyed by path relative to it using '/' separators
+     */
+    @NonNull
+    static Map<String, byte[]> readDirectory(@NonNull File directory) throws IOException {
+        Map<String, byte[]> files = new TreeMap<>();
+        for (String path : listFiles(directory)) {
+            files.put(path, Files.toByteArray(new File(directory, path)));
+        }
+        return files;
+    }
+
+    @NonNull
+    private static List<String> listFiles(@NonNull File directory) {
+        List<String> paths = new ArrayList<>();
+        addFiles(directory, "", paths);
+        return paths;
+    }
+
+    private static void addFiles(@NonNull File directory, @NonNull String prefix, @NonNull List<String> paths) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addFiles(file, prefix + file.getName() + "/", paths);
+            } else {
+                paths.add(prefix + file.getName());
+            }
+        }
+    }
+
+    private static boolean hasContent(@NonNull File file, @NonNull byte[] content) throws IOException {
+        // Comparing lengths first means most changes are caught without reading the file
+        return file.isFile() && file.length() == content.length && Arrays.equals(Files.toByteArray(file), content);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds the {@link PathHash} displacements for a set of asset paths.
+ */
+final class PathHashBuilder {
+
+    private PathHashBuilder() {
+        throw new IllegalAccessError("no instances");
+    }
+
+    /**
+     * @param paths unique asset paths
+     * @return displacements split into chunks, ready to embed as string constants
+     * @throws IllegalStateException if no displacement could be found for a bucket (which isn't expected in practice)
+     */
+    @NonNull
+    static String[] build(@NonNull List<String> paths) {
+        int size = PathHash.getTableSize(paths.size());
+        int bucketCount = PathHash.getBucketCount(size);
+
+        final List<List<String>> buckets = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new ArrayList<String>(2));
+        }
+        for (String path : paths) {
+            buckets.get(PathHash.getIndex(PathHash.hash(path, 0), bucketCount)).add(path);
+        }
+
+        // Place the largest buckets first, while there are still plenty of free slots
+        Integer[] order = new Integer[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return buckets.get(o2).size() - buckets.get(o1).size();
+            }
+        });
+
+        char[] displacements = new char[bucketCount];
+        boolean[] taken = new boolean[size];
+        int[] slots = new int[0];
+        for (Integer bucketIndex : order) {
+            List<String> bucket = buckets.get(bucketIndex);
+            if (bucket.isEmpty()) {
+                break;
+            }
+            if (slots.length < bucket.size()) {
+                slots = new int[bucket.size()];
+            }
+
+            int displacement = 1;
+            while (!tryPlace(bucket, displacement, size, taken, slots)) {
+                if (++displacement > PathHash.MAX_DISPLACEMENT) {
+                    throw new IllegalStateException("Unable to build path hash for bucket " + bucket);
+                }
+            }
+            displacements[bucketIndex] = (char) displacement;
+        }
+
+        int chunkCount = (bucketCount + PathHash.CHUNK_SIZE - 1) / PathHash.CHUNK_SIZE;
+        String[] chunks = new String[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            int start = i * PathHash.CHUNK_SIZE;
+            chunks[i] = new String(displacements, start, Math.min(PathHash.CHUNK_SIZE, bucketCount - start));
+        }
+        return chunks;
+    }
+
+    private static boolean tryPlace(@NonNull List<String> bucket,
+                                    int displacement,
+                                    int size,
+                                    @NonNull boolean[] taken,
+                                    @NonNull int[] slots) {
+        for (int i = 0; i < bucket.size(); i++) {
+            int slot = PathHash.getIndex(PathHash.hash(bucket.get(i), displacement), size);
+            if (taken[slot]) {
+                return false;
+            }
+            for (int j = 0; j < i; j++) {
+                if (slots[j] == slot) {
+                    return false;
+                }
+            }
+            slots[i] = slot;
+        }
+
+        for (int i = 0; i < bucket.size(); i++) {
+            taken[slots[i]] = true;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persists the probe results for each asset between builds, so only files which have actually changed need to be
+ * probed again. An entry is reused when the size and modification time match, or failing that (merging assets
+ * touches every file) when the size and content digest match.
+ */
+final class ProbeCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ProbeCache.class.getSimpleName());
+
+    private static final int MAGIC = 0x43524154; // CRAT
+    // Also part of the shared output key, so bumping it when classification changes invalidates both
+    static final int VERSION = 7;
+
+    @NonNull
+    private final File mCacheFile;
+
+    @NonNull
+    private final String mKey;
+
+    @NonNull
+    private final Map<String, Entry> mPrevious = new ConcurrentHashMap<>();
+
+    @NonNull
+    private final Map<String, Entry> mCurrent = new ConcurrentHashMap<>();
+
+    @NonNull
+    private final AtomicInteger mHits = new AtomicInteger();
+
+    @NonNull
+    private final AtomicInteger mMisses = new AtomicInteger();
+
+    @Nullable
+    private volatile Set<String> mChangedPaths;
+
+
+    /**
+     * @param cacheFile file to load from and save to
+     * @param key       any change to this key (such as a new plugin version) discards the existing cache
+     */
+    ProbeCache(@NonNull File cacheFile, @NonNull String key) {
+        mCacheFile = cacheFile;
+        mKey = key;
+    }
+
+
+    void load() {
+        mPrevious.clear();
+        mCurrent.clear();
+        if (!mCacheFile.isFile()) {
+            return;
+        }
+
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(mCacheFile)));
+            //noinspection TryFinallyCanBeTryWithResources
+            try {
+                if (input.readInt() != MAGIC || input.readInt() != VERSION || !mKey.equals(input.readUTF())) {
+                    log.info("Crate: Discarding stale probe cache " + mCacheFile.getPath());
+                    return;
+                }
+
+                int count = input.readInt();
+                for (int i = 0; i < count; i++) {
+                    String path = input.readUTF();
+                    long length = input.readLong();
+                    long lastModified = input.readLong();
+                    byte[] digest = new byte[input.readUnsignedByte()];
+                    input.readFully(digest);
+                    int dataLength = input.readInt();
+                    byte[] data = dataLength >= 0 ? new byte[dataLength] : null;
+                    if (data != null) {
+                        input.readFully(data);
+                    }
+                    mPrevious.put(path, new Entry(length, lastModified, digest, data));
+                }
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            log.error("Crate: Failed to read probe cache " + mCacheFile.getPath(), e);
+            mPrevious.clear();
+        }
+    }
+
+    void save() {
+        File parent = mCacheFile.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            log.error("Crate: Failed to create probe cache directory " + parent.getPath());
+            return;
+        }
+
+        File tempFile = new File(mCacheFile.getPath() + ".tmp");
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            //noinspection TryFinallyCanBeTryWithResources
+            try {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeUTF(mKey);
+                output.writeInt(mCurrent.size());
+                for (Map.Entry<String, Entry> mapEntry : mCurrent.entrySet()) {
+                    Entry entry = mapEntry.getValue();
+                    output.writeUTF(mapEntry.getKey());
+                    output.writeLong(entry.mLength);
+                    output.writeLong(entry.mLastModified);
+                    output.writeByte(entry.mDigest.length);
+                    output.write(entry.mDigest);
+                    if (entry.mData != null) {
+                        output.writeInt(entry.mData.length);
+                        output.write(entry.mData);
+                    } else {
+                        output.writeInt(-1);
+                    }
+                }
+            } finally {
+                output.close();
+            }
+
+            if (mCacheFile.exists() && !mCacheFile.delete()) {
+                throw new IOException("Unable to replace " + mCacheFile.getPath());
+            }
+            if (!tempFile.renameTo(mCacheFile)) {
+                throw new IOException("Unable to rename " + tempFile.getPath());
+            }
+        } catch (IOException e) {
+            log.error("Crate: Failed to write probe cache " + mCacheFile.getPath(), e);
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Lets the cache skip checking files which the build system already knows haven't changed (the paths of added and
+     * modified files in an incremental build).
+     *
+     * @param changedPaths paths of all changed files, or null if unknown and every file should be checked
+     */
+    void setChangedPaths(@Nullable Set<String> changedPaths) {
+        mChangedPaths = changedPaths;
+    }
+
+    /**
+     * @return the previously stored probe data for this file, or null if the file is new or has changed
+     */
+    @Nullable
+    byte[] get(@NonNull String path, @NonNull File file) {
+        Entry entry = mPrevious.get(path);
+        long length = file.length();
+        long lastModified = file.lastModified();
+
+        Set<String> changedPaths = mChangedPaths;
+        if (entry != null && changedPaths != null && !changedPaths.contains(path)) {
+            entry = new Entry(length, lastModified, entry.mDigest, entry.mData);
+        } else if (entry != null && entry.mLength == length) {
+            if (entry.mLastModified != lastModified) {
+                byte[] digest = digest(file);
+                if (digest == null || !Arrays.equals(digest, entry.mDigest)) {
+                    mMisses.incrementAndGet();
+                    return null;
+                }
+                entry = new Entry(length, lastModified, digest, entry.mData);
+            }
+        } else {
+            mMisses.incrementAndGet();
+            return null;
+        }
+
+        if (entry.mData == null) {
+            // Only digested so far, the file still needs probing
+            mMisses.incrementAndGet();
+            return null;
+        }
+
+        mCurrent.put(path, entry);
+        mHits.incrementAndGet();
+        return entry.mData;
+    }
+
+    /**
+     * Returns the content digest of a file, reusing the stored digest when the file is known not to have changed.
+     * Digests are kept even for files which are never probed (such as when another variant's output is reused), and
+     * a later {@link #get(String, File)} or {@link #put(String, File, byte[])} won't read the file again.
+     */
+    @Nullable
+    byte[] getDigest(@NonNull String path, @NonNull File file) {
+        Entry entry = mPrevious.get(path);
+        long length = file.length();
+        long lastModified = file.lastModified();
+
+        Set<String> changedPaths = mChangedPaths;
+        if (entry == null || entry.mLength != length || (entry.mLastModified != lastModified
+                && (changedPaths == null || changedPaths.contains(path)))) {
+            byte[] digest = digest(file);
+            if (digest == null) {
+                return null;
+            }
+            boolean unchanged = entry != null && entry.mLength == length && Arrays.equals(digest, entry.mDigest);
+            entry = new Entry(length, lastModified, digest, unchanged ? entry.mData : null);
+        } else if (entry.mLastModified != lastModified) {
+            entry = new Entry(length, lastModified, entry.mDigest, entry.mData);
+        }
+
+        mPrevious.put(path, entry);
+        mCurrent.put(path, entry);
+        return entry.mDigest;
+    }
+
+    void put(@NonNull String path, @NonNull File file, @NonNull byte[] data) {
+        long length = file.length();
+        long lastModified = file.lastModified();
+
+        Entry entry = mPrevious.get(path);
+        byte[] digest = entry != null && entry.mLength == length && entry.mLastModified == lastModified
+                ? entry.mDigest : digest(file);
+        if (digest != null) {
+            mCurrent.put(path, new Entry(length, lastModified, digest, data));
+        }
+    }
+
+    int getHitCount() {
+        return mHits.get();
+    }
+
+    int getMissCount() {
+        return mMisses.get();
+    }
+
+    @Nullable
+    private static byte[] digest(@NonNull File file) {
+        try {
+            return Files.asByteSource(file).hash(Hashing.md5()).asBytes();
+        } catch (IOException e) {
+            log.error("Crate: Failed to digest " + file.getPath(), e);
+            return null;
+        }
+    }
+
+    private static final class Entry {
+
+        final long mLength;
+
+        final long mLastModified;
+
+        @NonNull
+        final byte[] mDigest;
+
+        // Null if the file has only been digested, and not probed
+        @Nullable
+        final byte[] mData;
+
+        private Entry(long length, long lastModified, @NonNull byte[] digest, @Nullable byte[] data) {
+            mLength = length;
+            mLastModified = lastModified;
+            mDigest = digest;
+            mData = data;
+        }
+    }
+}
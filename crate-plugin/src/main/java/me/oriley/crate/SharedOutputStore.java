@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Keeps generated output in a directory shared by all variants, keyed by a digest of the merged assets and generator
+ * options. Variants with identical assets (usually debug and release, and most flavors) then only scan and probe them
+ * once per build.
+ */
+final class SharedOutputStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedOutputStore.class.getSimpleName());
+
+    // Enough for every variant of a typical project, without letting old outputs pile up
+    private static final int MAX_ENTRIES = 16;
+
+    private static final String JAVA_FILE = "CrateDictionary.java";
+
+    private static final String CLASS_DIR = "classes";
+
+    @NonNull
+    private final File mDirectory;
+
+
+    SharedOutputStore(@NonNull File directory) {
+        mDirectory = directory;
+    }
+
+
+    /**
+     * Copies previously stored output for this key into place, leaving files which already match untouched.
+     *
+     * @param javaFile  destination for the dictionary source, or null if generating class files instead
+     * @param indexFile destination for the binary index, or null if not generating one
+     * @param classDir  destination for the dictionary class files, or null if generating source instead
+     * @return true if output was found and copied, false if it needs to be generated
+     */
+    boolean restore(@NonNull String key, @Nullable File javaFile, @Nullable File indexFile, @Nullable File classDir) {
+        File entry = new File(mDirectory, key);
+        File storedJava = new File(entry, JAVA_FILE);
+        File storedIndex = new File(entry, AssetIndex.FILE_NAME);
+        File storedClasses = new File(entry, CLASS_DIR);
+        if ((javaFile != null && !storedJava.isFile()) || (indexFile != null && !storedIndex.isFile())
+                || (classDir != null && !storedClasses.isDirectory())) {
+            return false;
+        }
+
+        try {
+            if (javaFile != null) {
+                OutputFiles.copyIfChanged(storedJava, javaFile);
+            }
+            if (indexFile != null) {
+                OutputFiles.copyIfChanged(storedIndex, indexFile);
+            }
+            if (classDir != null) {
+                OutputFiles.writeDirectory(classDir, OutputFiles.readDirectory(storedClasses));
+            }
+        } catch (IOException e) {
+            log.error("Crate: Failed to restore shared output " + entry.getPath(), e);
+            return false;
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        entry.setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Stores freshly generated output under this key. Entries are written to a temporary directory and renamed into
+     * place, so other variants never see a partial entry.
+     */
+    void store(@NonNull String key, @Nullable File javaFile, @Nullable File indexFile, @Nullable File classDir) {
+        File entry = new File(mDirectory, key);
+        if (entry.isDirectory()) {
+            return;
+        }
+
+        File tempEntry = new File(mDirectory, key + ".tmp" + System.nanoTime());
+        try {
+            if (javaFile != null) {
+                copy(javaFile, new File(tempEntry, JAVA_FILE));
+            }
+            if (indexFile != null) {
+                copy(indexFile, new File(tempEntry, AssetIndex.FILE_NAME));
+            }
+            if (classDir != null) {
+                OutputFiles.writeDirectory(new File(tempEntry, CLASS_DIR), OutputFiles.readDirectory(classDir));
+            }
+            if (!tempEntry.renameTo(entry)) {
+                throw new IOException("Unable to rename " + tempEntry.getPath());
+            }
+        } catch (IOException e) {
+            log.error("Crate: Failed to store shared output " + entry.getPath(), e);
+        } finally {
+            delete(tempEntry);
+        }
+
+        prune();
+    }
+
+    private void prune() {
+        File[] entries = mDirectory.listFiles();
+        if (entries == null || entries.length <= MAX_ENTRIES) {
+            return;
+        }
+
+        // Most recently used first
+        Arrays.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(o2.lastModified(), o1.lastModified());
+            }
+        });
+        for (int i = MAX_ENTRIES; i < entries.length; i++) {
+            delete(entries[i]);
+        }
+    }
+
+    private static void copy(@NonNull File from, @NonNull File to) throws IOException {
+        Files.createParentDirs(to);
+        Files.copy(from, to);
+    }
+
+    private static void delete(@NonNull File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
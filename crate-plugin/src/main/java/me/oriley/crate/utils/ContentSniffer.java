@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate.utils;
+
+import android.support.annotation.NonNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Locale.US;
+
+/**
+ * Classifies files by their leading bytes, so results don't depend on the MIME database of the build host. Only
+ * falls back to the file extension when the content itself can't be inspected (such as Gzip compressed files).
+ */
+public final class ContentSniffer {
+
+    public enum Kind {
+        FONT, IMAGE, VIDEO, SVG, OTHER
+    }
+
+    /**
+     * Number of leading bytes needed to classify a file
+     */
+    public static final int HEADER_SIZE = 1024;
+
+    private static final String GZIP_EXTENSION = ".gz";
+
+    private static final List<String> FONT_EXTENSIONS = Arrays.asList("otf", "ttf", "ttc");
+    private static final List<String> IMAGE_EXTENSIONS = Arrays.asList("jpg", "jpeg", "png", "gif", "bmp", "webp");
+    private static final List<String> SVG_EXTENSIONS = Arrays.asList("svg", "svgz");
+    private static final List<String> VIDEO_EXTENSIONS = Arrays.asList("3gp", "mp4", "webm");
+
+    // Audio only files in an MP4 container, typed as plain assets like any other audio
+    private static final List<String> AUDIO_EXTENSIONS = Arrays.asList("m4a", "m4b", "m4p", "f4a", "f4b");
+
+    // ISO base media brands which are still images rather than video
+    private static final List<String> IMAGE_BRANDS = Arrays.asList("avif", "heic", "heix", "mif1", "msf1");
+
+    // ISO base media brands which are audio only
+    private static final List<String> AUDIO_BRANDS = Arrays.asList("M4A ", "M4B ", "M4P ", "F4A ", "F4B ");
+
+    // ISO base media brands which are video, other brands are classified by extension
+    private static final List<String> VIDEO_BRANDS = Arrays.asList("3g2a", "3ge6", "3ge7", "3gg6", "3gp4", "3gp5",
+            "3gp6", "3gs7", "avc1", "dash", "f4v ", "iso2", "iso4", "iso5", "iso6", "isom", "M4V ", "M4VH", "M4VP",
+            "mmp4", "mp41", "mp42", "MSNV", "qt  ");
+
+    private static final List<Integer> BMP_HEADER_SIZES = Arrays.asList(12, 40, 52, 56, 64, 108, 124);
+
+    private ContentSniffer() {
+        throw new IllegalAccessError("no instances");
+    }
+
+    public static boolean isGzipped(@NonNull byte[] header, int length) {
+        return length >= 2 && (header[0] & 0xFF) == 0x1F && (header[1] & 0xFF) == 0x8B;
+    }
+
+    /**
+     * @param header   leading bytes of the file, at least {@link #HEADER_SIZE} unless the file is shorter
+     * @param length   number of valid bytes in the header
+     * @param fileName only used for Gzip compressed files, MP4 files with an audio or unknown brand, and for markup
+     *                 with no svg element in the header
+     */
+    @NonNull
+    public static Kind sniff(@NonNull byte[] header, int length, @NonNull String fileName) {
+        if (isGzipped(header, length)) {
+            return fromExtension(fileName);
+        } else if (length < 4) {
+            return Kind.OTHER;
+        }
+
+        int magic = getInt(header, 0);
+        switch (magic) {
+            case 0x89504E47: // PNG
+            case 0x47494638: // GIF8
+                return Kind.IMAGE;
+            case 0x00010000: // TrueType
+            case 0x4F54544F: // OTTO
+            case 0x74727565: // true
+            case 0x74746366: // ttcf
+                return Kind.FONT;
+            case 0x1A45DFA3: // EBML
+                return containsAscii(header, length, "webm") ? Kind.VIDEO : Kind.OTHER;
+            case 0x52494646: // RIFF
+                return length >= 12 && getInt(header, 8) == 0x57454250 ? Kind.IMAGE : Kind.OTHER;
+            default:
+                break;
+        }
+
+        if ((header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xD8 && (header[2] & 0xFF) == 0xFF) {
+            return Kind.IMAGE;
+        } else if (header[0] == 'B' && header[1] == 'M' && length >= 18
+                && BMP_HEADER_SIZES.contains(getLittleEndianInt(header, 14))) {
+            return Kind.IMAGE;
+        } else if (length >= 8) {
+            String box = new String(header, 4, 4, StandardCharsets.US_ASCII);
+            if ("ftyp".equals(box)) {
+                String brand = length >= 12 ? new String(header, 8, 4, StandardCharsets.US_ASCII) : "";
+                return sniffBrand(brand, fileName);
+            } else if ("moov".equals(box) || "mdat".equals(box) || "wide".equals(box)) {
+                return Kind.VIDEO;
+            }
+        }
+
+        return isSvg(header, length, fileName) ? Kind.SVG : Kind.OTHER;
+    }
+
+    /**
+     * Classifies an ISO base media file by its major brand. Generic brands such as isom are also used for audio only
+     * files, so an audio extension wins over them.
+     */
+    @NonNull
+    private static Kind sniffBrand(@NonNull String brand, @NonNull String fileName) {
+        if (IMAGE_BRANDS.contains(brand) || AUDIO_BRANDS.contains(brand)
+                || AUDIO_EXTENSIONS.contains(getExtension(fileName))) {
+            return Kind.OTHER;
+        } else if (VIDEO_BRANDS.contains(brand)) {
+            return Kind.VIDEO;
+        } else {
+            return fromExtension(fileName) == Kind.VIDEO ? Kind.VIDEO : Kind.OTHER;
+        }
+    }
+
+    /**
+     * Classifies by extension, ignoring any trailing .gz
+     */
+    @NonNull
+    static Kind fromExtension(@NonNull String fileName) {
+        String extension = getExtension(fileName);
+        if (FONT_EXTENSIONS.contains(extension)) {
+            return Kind.FONT;
+        } else if (IMAGE_EXTENSIONS.contains(extension)) {
+            return Kind.IMAGE;
+        } else if (SVG_EXTENSIONS.contains(extension)) {
+            return Kind.SVG;
+        } else if (VIDEO_EXTENSIONS.contains(extension)) {
+            return Kind.VIDEO;
+        } else {
+            return Kind.OTHER;
+        }
+    }
+
+    /**
+     * @return lower case extension, ignoring any trailing .gz
+     */
+    @NonNull
+    private static String getExtension(@NonNull String fileName) {
+        String name = fileName.toLowerCase(US);
+        if (name.endsWith(GZIP_EXTENSION)) {
+            name = name.substring(0, name.length() - GZIP_EXTENSION.length());
+        }
+
+        int index = name.lastIndexOf('.');
+        return index >= 0 ? name.substring(index + 1) : "";
+    }
+
+    private static boolean isSvg(@NonNull byte[] header, int length, @NonNull String fileName) {
+        int start = 0;
+        if (length >= 3 && (header[0] & 0xFF) == 0xEF && (header[1] & 0xFF) == 0xBB && (header[2] & 0xFF) == 0xBF) {
+            start = 3; // UTF-8 byte order mark
+        }
+        while (start < length && Character.isWhitespace(header[start])) {
+            start++;
+        }
+
+        // Must be markup, with the root element somewhere after any prolog, comments or doctype
+        return start < length && header[start] == '<'
+                && (containsAscii(header, length, "<svg") || fromExtension(fileName) == Kind.SVG);
+    }
+
+    private static boolean containsAscii(@NonNull byte[] header, int length, @NonNull String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        outer:
+        for (int i = 0; i <= length - bytes.length; i++) {
+            for (int j = 0; j < bytes.length; j++) {
+                if (header[i + j] != bytes[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static int getInt(@NonNull byte[] header, int offset) {
+        return ((header[offset] & 0xFF) << 24) | ((header[offset + 1] & 0xFF) << 16)
+                | ((header[offset + 2] & 0xFF) << 8) | (header[offset + 3] & 0xFF);
+    }
+
+    private static int getLittleEndianInt(@NonNull byte[] header, int offset) {
+        return (header[offset] & 0xFF) | ((header[offset + 1] & 0xFF) << 8)
+                | ((header[offset + 2] & 0xFF) << 16) | ((header[offset + 3] & 0xFF) << 24);
+    }
+}
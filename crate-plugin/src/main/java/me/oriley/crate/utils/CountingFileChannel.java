@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate.utils;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delegates to another channel, counting the bytes read through it. Closing this channel closes the delegate.
+ */
+public final class CountingFileChannel extends FileChannel {
+
+    @NonNull
+    private final FileChannel mDelegate;
+
+    @NonNull
+    private final AtomicLong mCount = new AtomicLong();
+
+
+    public CountingFileChannel(@NonNull FileChannel delegate) {
+        mDelegate = delegate;
+    }
+
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    private int count(int read) {
+        if (read > 0) {
+            mCount.addAndGet(read);
+        }
+        return read;
+    }
+
+    private long count(long read) {
+        if (read > 0) {
+            mCount.addAndGet(read);
+        }
+        return read;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        return count(mDelegate.read(dst));
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        return count(mDelegate.read(dsts, offset, length));
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        return count(mDelegate.read(dst, position));
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        return count(mDelegate.transferTo(position, count, target));
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return mDelegate.write(src);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        return mDelegate.write(srcs, offset, length);
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) throws IOException {
+        return mDelegate.write(src, position);
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+        return mDelegate.transferFrom(src, position, count);
+    }
+
+    @Override
+    public long position() throws IOException {
+        return mDelegate.position();
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException {
+        mDelegate.position(newPosition);
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return mDelegate.size();
+    }
+
+    @Override
+    public FileChannel truncate(long size) throws IOException {
+        mDelegate.truncate(size);
+        return this;
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        mDelegate.force(metaData);
+    }
+
+    /**
+     * Mapped bytes are counted in full, as there's no way to tell how many are actually touched
+     */
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        MappedByteBuffer buffer = mDelegate.map(mode, position, size);
+        count(size);
+        return buffer;
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+        return mDelegate.lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        return mDelegate.tryLock(position, size, shared);
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        mDelegate.close();
+    }
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads font names and metrics from the name, OS/2, head, hhea and maxp tables of a TrueType/OpenType font (or the
+ * first font of a collection). Only the table directory and those tables are read, without loading the font.
+ * Tables are read in file order, so a forward-only stream (such as a Gzip compressed font) works as well as a channel.
+ */
+public final class FontTableReader {
+
+    private static final int TRUE_TYPE = 0x00010000;
+    private static final int OPEN_TYPE = 0x4F54544F; // OTTO
+    private static final int APPLE_TRUE_TYPE = 0x74727565; // true
+    private static final int COLLECTION = 0x74746366; // ttcf
+
+    private static final int NAME = 0x6E616D65;
+    private static final int OS2 = 0x4F532F32;
+    private static final int HEAD = 0x68656164;
+    private static final int HHEA = 0x68686561;
+    private static final int MAXP = 0x6D617870;
+
+    private static final int NAME_FAMILY = 1;
+    private static final int NAME_FULL = 4;
+
+    private static final int PLATFORM_UNICODE = 0;
+    private static final int PLATFORM_MACINTOSH = 1;
+    private static final int PLATFORM_WINDOWS = 3;
+    private static final int LANGUAGE_EN_US = 0x409;
+
+    private static final int MAX_TABLES = 256;
+
+    private FontTableReader() {
+        throw new IllegalAccessError("no instances");
+    }
+
+    /**
+     * @return font information, or null if the file isn't a TrueType/OpenType font
+     */
+    @Nullable
+    public static FontInfo read(@NonNull File file) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            return read(stream.getChannel());
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Nullable
+    public static FontInfo read(@NonNull FileChannel channel) throws IOException {
+        return read(new ChannelSource(channel));
+    }
+
+    /**
+     * Reads from the current position of the stream, which is left positioned after the last table read.
+     */
+    @Nullable
+    public static FontInfo read(@NonNull InputStream stream) throws IOException {
+        return read(new StreamSource(stream));
+    }
+
+    @Nullable
+    private static FontInfo read(@NonNull Source source) throws IOException {
+        try {
+            ByteBuffer buffer = source.read(0, 12);
+            long fontOffset = 0;
+            if (buffer.getInt(0) == COLLECTION) {
+                fontOffset = buffer.getInt(8) & 0xFFFFFFFFL;
+                buffer = source.read(fontOffset, 12);
+            }
+
+            int version = buffer.getInt(0);
+            if (version != TRUE_TYPE && version != OPEN_TYPE && version != APPLE_TRUE_TYPE) {
+                return null;
+            }
+
+            int numTables = buffer.getShort(4) & 0xFFFF;
+            if (numTables > MAX_TABLES) {
+                return null;
+            }
+
+            ByteBuffer directory = source.read(fontOffset + 12, numTables * 16);
+            List<TableRecord> records = new ArrayList<>();
+            for (int i = 0; i < numTables; i++) {
+                int record = i * 16;
+                int tag = directory.getInt(record);
+                if (tag == NAME || tag == OS2 || tag == HEAD || tag == HHEA || tag == MAXP) {
+                    records.add(new TableRecord(tag, directory.getInt(record + 8) & 0xFFFFFFFFL,
+                            directory.getInt(record + 12)));
+                }
+            }
+            Collections.sort(records);
+
+            FontInfo info = new FontInfo();
+            for (TableRecord record : records) {
+                switch (record.mTag) {
+                    case NAME:
+                        readName(source.read(record.mOffset, record.mLength), info);
+                        break;
+                    case OS2:
+                        readOs2(source.read(record.mOffset, Math.min(record.mLength, 64)), info);
+                        break;
+                    case HEAD:
+                        readHead(source.read(record.mOffset, Math.min(record.mLength, 54)), info);
+                        break;
+                    case HHEA:
+                        readHhea(source.read(record.mOffset, Math.min(record.mLength, 8)), info);
+                        break;
+                    case MAXP:
+                        readMaxp(source.read(record.mOffset, Math.min(record.mLength, 6)), info);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return info;
+        } catch (EOFException | IndexOutOfBoundsException e) {
+            // Truncated or malformed tables
+            return null;
+        }
+    }
+
+    private static void readName(@NonNull ByteBuffer table, @NonNull FontInfo info) {
+        int count = table.getShort(2) & 0xFFFF;
+        int stringOffset = table.getShort(4) & 0xFFFF;
+        int familyScore = 0;
+        int fullScore = 0;
+
+        for (int i = 0; i < count; i++) {
+            int record = 6 + i * 12;
+            int platform = table.getShort(record) & 0xFFFF;
+            int encoding = table.getShort(record + 2) & 0xFFFF;
+            int language = table.getShort(record + 4) & 0xFFFF;
+            int nameId = table.getShort(record + 6) & 0xFFFF;
+            int length = table.getShort(record + 8) & 0xFFFF;
+            int offset = table.getShort(record + 10) & 0xFFFF;
+
+            if (nameId != NAME_FAMILY && nameId != NAME_FULL) {
+                continue;
+            }
+
+            int score = getNameScore(platform, encoding, language);
+            if (score <= (nameId == NAME_FAMILY ? familyScore : fullScore)) {
+                continue;
+            }
+
+            Charset charset = platform == PLATFORM_MACINTOSH ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_16BE;
+            String name = new String(table.array(), stringOffset + offset, length, charset).trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+
+            if (nameId == NAME_FAMILY) {
+                info.mFamilyName = name;
+                familyScore = score;
+            } else {
+                info.mFullName = name;
+                fullScore = score;
+            }
+        }
+    }
+
+    /**
+     * Ranks name records, preferring US English Windows names as those are what most platforms display.
+     */
+    private static int getNameScore(int platform, int encoding, int language) {
+        if (platform == PLATFORM_WINDOWS && (encoding == 1 || encoding == 10)) {
+            return language == LANGUAGE_EN_US ? 4 : 3;
+        } else if (platform == PLATFORM_UNICODE) {
+            return 2;
+        } else if (platform == PLATFORM_MACINTOSH && encoding == 0) {
+            return 1;
+        }
+        return 0;
+    }
+
+    private static void readOs2(@NonNull ByteBuffer table, @NonNull FontInfo info) {
+        info.mWeight = table.getShort(4) & 0xFFFF;
+        if (table.limit() >= 64) {
+            info.mItalic |= (table.getShort(62) & 0x01) != 0;
+        }
+    }
+
+    private static void readHead(@NonNull ByteBuffer table, @NonNull FontInfo info) {
+        info.mUnitsPerEm = table.getShort(18) & 0xFFFF;
+        info.mItalic |= (table.getShort(44) & 0x02) != 0;
+    }
+
+    private static void readHhea(@NonNull ByteBuffer table, @NonNull FontInfo info) {
+        info.mAscent = table.getShort(4);
+        info.mDescent = table.getShort(6);
+    }
+
+    private static void readMaxp(@NonNull ByteBuffer table, @NonNull FontInfo info) {
+        info.mGlyphCount = table.getShort(4) & 0xFFFF;
+    }
+
+    private interface Source {
+
+        @NonNull
+        ByteBuffer read(long position, int length) throws IOException;
+    }
+
+    private static final class ChannelSource implements Source {
+
+        @NonNull
+        private final FileChannel mChannel;
+
+        ChannelSource(@NonNull FileChannel channel) {
+            mChannel = channel;
+        }
+
+        @NonNull
+        @Override
+        public ByteBuffer read(long position, int length) throws IOException {
+            if (length < 0) {
+                throw new EOFException();
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (mChannel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    private static final class StreamSource implements Source {
+
+        @NonNull
+        private final InputStream mStream;
+
+        private long mPosition;
+
+        StreamSource(@NonNull InputStream stream) {
+            mStream = stream;
+        }
+
+        @NonNull
+        @Override
+        public ByteBuffer read(long position, int length) throws IOException {
+            if (length < 0 || position < mPosition) {
+                // Overlapping tables can't be read without seeking backwards
+                throw new EOFException();
+            }
+
+            while (mPosition < position) {
+                long skipped = mStream.skip(position - mPosition);
+                if (skipped <= 0) {
+                    if (mStream.read() < 0) {
+                        throw new EOFException();
+                    }
+                    skipped = 1;
+                }
+                mPosition += skipped;
+            }
+
+            byte[] bytes = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int count = mStream.read(bytes, read, length - read);
+                if (count < 0) {
+                    throw new EOFException();
+                }
+                read += count;
+            }
+            mPosition += length;
+            return ByteBuffer.wrap(bytes);
+        }
+    }
+
+    private static final class TableRecord implements Comparable<TableRecord> {
+
+        final int mTag;
+
+        final long mOffset;
+
+        final int mLength;
+
+        TableRecord(int tag, long offset, int length) {
+            mTag = tag;
+            mOffset = offset;
+            mLength = length;
+        }
+
+        @Override
+        public int compareTo(@NonNull TableRecord other) {
+            return mOffset < other.mOffset ? -1 : (mOffset == other.mOffset ? 0 : 1);
+        }
+    }
+
+    public static final class FontInfo {
+
+        @Nullable
+        String mFamilyName;
+
+        @Nullable
+        String mFullName;
+
+        int mWeight;
+
+        boolean mItalic;
+
+        int mUnitsPerEm;
+
+        int mAscent;
+
+        int mDescent;
+
+        int mGlyphCount;
+
+        private FontInfo() {
+        }
+
+        @Nullable
+        public String getFamilyName() {
+            return mFamilyName;
+        }
+
+        @Nullable
+        public String getFullName() {
+            return mFullName;
+        }
+
+        /**
+         * @return weight class from 1 to 1000, where 400 is regular and 700 is bold
+         */
+        public int getWeight() {
+            return mWeight;
+        }
+
+        public boolean isItalic() {
+            return mItalic;
+        }
+
+        public int getUnitsPerEm() {
+            return mUnitsPerEm;
+        }
+
+        public int getAscent() {
+            return mAscent;
+        }
+
+        /**
+         * @return descent in font units, typically negative as it is below the baseline
+         */
+        public int getDescent() {
+            return mDescent;
+        }
+
+        public int getGlyphCount() {
+            return mGlyphCount;
+        }
+    }
+}
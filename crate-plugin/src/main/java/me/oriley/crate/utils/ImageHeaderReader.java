@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads image dimensions straight from the file header, without decoding any pixel data. Supports PNG, JPEG, GIF,
+ * BMP and WebP (lossy, lossless and extended). For everything except JPEG this reads no more than the first 30 bytes;
+ * JPEG segments are skipped until the first start of frame marker.
+ */
+public final class ImageHeaderReader {
+
+    private static final int PNG_SIGNATURE = 0x89504E47;
+    private static final int PNG_IHDR = 0x49484452;
+    private static final int GIF_SIGNATURE = 0x474946; // GIF
+    private static final int BMP_SIGNATURE = 0x424D; // BM
+    private static final int RIFF = 0x52494646;
+    private static final int WEBP = 0x57454250;
+    private static final int WEBP_VP8 = 0x56503820; // 'VP8 '
+    private static final int WEBP_VP8L = 0x5650384C;
+    private static final int WEBP_VP8X = 0x56503858;
+
+    private static final int JPEG_MARKER = 0xFF;
+    private static final int JPEG_SOI = 0xD8;
+    private static final int JPEG_EOI = 0xD9;
+    private static final int JPEG_SOS = 0xDA;
+
+    private ImageHeaderReader() {
+        throw new IllegalAccessError("no instances");
+    }
+
+    /**
+     * @return width and height of the image, or null if the format isn't recognised or the header is invalid
+     */
+    @Nullable
+    public static int[] readDimensions(@NonNull InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(inputStream);
+        try {
+            int first = input.readUnsignedByte();
+            int second = input.readUnsignedByte();
+
+            if (first == JPEG_MARKER && second == JPEG_SOI) {
+                return readJpeg(input);
+            } else if (((first << 8) | second) == BMP_SIGNATURE) {
+                return readBmp(input);
+            }
+
+            int magic = (first << 24) | (second << 16) | input.readUnsignedShort();
+            if (magic == PNG_SIGNATURE) {
+                return readPng(input);
+            } else if ((magic >>> 8) == GIF_SIGNATURE) {
+                return readGif(input);
+            } else if (magic == RIFF) {
+                return readWebp(input);
+            }
+        } catch (EOFException e) {
+            // Truncated header
+        }
+
+        return null;
+    }
+
+    @Nullable
+    private static int[] readPng(@NonNull DataInputStream input) throws IOException {
+        // Remainder of signature, then the IHDR chunk which must come first
+        skipFully(input, 4);
+        input.readInt();
+        if (input.readInt() != PNG_IHDR) {
+            return null;
+        }
+        return validate(input.readInt(), input.readInt());
+    }
+
+    @Nullable
+    private static int[] readGif(@NonNull DataInputStream input) throws IOException {
+        // Remainder of the 87a/89a version
+        skipFully(input, 2);
+        int width = readLittleEndianShort(input);
+        int height = readLittleEndianShort(input);
+        return validate(width, height);
+    }
+
+    @Nullable
+    private static int[] readBmp(@NonNull DataInputStream input) throws IOException {
+        // File size, reserved and pixel data offset
+        skipFully(input, 12);
+        int headerSize = readLittleEndianInt(input);
+        if (headerSize == 12) {
+            // OS/2 BITMAPCOREHEADER
+            return validate(readLittleEndianShort(input), readLittleEndianShort(input));
+        } else if (headerSize >= 40) {
+            // Height is negative for top-down bitmaps
+            return validate(readLittleEndianInt(input), Math.abs(readLittleEndianInt(input)));
+        }
+        return null;
+    }
+
+    @Nullable
+    private static int[] readWebp(@NonNull DataInputStream input) throws IOException {
+        input.readInt();
+        if (input.readInt() != WEBP) {
+            return null;
+        }
+
+        int chunk = input.readInt();
+        input.readInt();
+
+        switch (chunk) {
+            case WEBP_VP8:
+                // Frame tag, then key frame start code 9D 01 2A
+                skipFully(input, 3);
+                if (input.readUnsignedByte() != 0x9D || input.readUnsignedByte() != 0x01
+                        || input.readUnsignedByte() != 0x2A) {
+                    return null;
+                }
+                return validate(readLittleEndianShort(input) & 0x3FFF, readLittleEndianShort(input) & 0x3FFF);
+            case WEBP_VP8L:
+                if (input.readUnsignedByte() != 0x2F) {
+                    return null;
+                }
+                int bits = readLittleEndianInt(input);
+                return validate((bits & 0x3FFF) + 1, ((bits >>> 14) & 0x3FFF) + 1);
+            case WEBP_VP8X:
+                // Feature flags and reserved bytes
+                skipFully(input, 4);
+                return validate(readLittleEndianInt24(input) + 1, readLittleEndianInt24(input) + 1);
+            default:
+                return null;
+        }
+    }
+
+    @Nullable
+    private static int[] readJpeg(@NonNull DataInputStream input) throws IOException {
+        while (true) {
+            int marker = input.readUnsignedByte();
+            if (marker != JPEG_MARKER) {
+                return null;
+            }
+
+            // Any number of fill bytes may precede the marker code
+            do {
+                marker = input.readUnsignedByte();
+            } while (marker == JPEG_MARKER);
+
+            if (marker == JPEG_EOI || marker == JPEG_SOS) {
+                // No frame header before image data
+                return null;
+            } else if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                // Standalone markers without a length
+                continue;
+            }
+
+            int length = input.readUnsignedShort();
+            if (length < 2) {
+                return null;
+            }
+
+            if (isStartOfFrame(marker)) {
+                input.readUnsignedByte(); // Sample precision
+                int height = input.readUnsignedShort();
+                int width = input.readUnsignedShort();
+                return validate(width, height);
+            }
+
+            skipFully(input, length - 2);
+        }
+    }
+
+    private static boolean isStartOfFrame(int marker) {
+        // SOF0 to SOF15, excluding DHT (C4), JPG (C8) and DAC (CC)
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    @Nullable
+    private static int[] validate(int width, int height) {
+        return width > 0 && height > 0 ? new int[]{width, height} : null;
+    }
+
+    private static int readLittleEndianShort(@NonNull DataInputStream input) throws IOException {
+        return input.readUnsignedByte() | (input.readUnsignedByte() << 8);
+    }
+
+    private static int readLittleEndianInt24(@NonNull DataInputStream input) throws IOException {
+        return readLittleEndianShort(input) | (input.readUnsignedByte() << 16);
+    }
+
+    private static int readLittleEndianInt(@NonNull DataInputStream input) throws IOException {
+        return readLittleEndianShort(input) | (readLittleEndianShort(input) << 16);
+    }
+
+    private static void skipFully(@NonNull InputStream input, long count) throws IOException {
+        while (count > 0) {
+            long skipped = input.skip(count);
+            if (skipped <= 0) {
+                if (input.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+}
@@ -55,6 +55,13 @@ public final class JavaPoetUtils {
         }
     }
 
+    public static void addNullability(@NonNull MethodSpec.Builder builder, @NonNull Nullability nullability) {
+        if (nullability != NONE) {
+            builder.addAnnotation(
+                    AnnotationSpec.builder(nullability == NULLABLE ? Nullable.class : NonNull.class).build());
+        }
+    }
+
     @NonNull
     public static FieldSpec createBooleanField(@NonNull String name,
                                                boolean initialValue,
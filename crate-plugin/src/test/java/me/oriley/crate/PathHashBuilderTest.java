@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class PathHashBuilderTest {
+
+    private static final int TRIALS = 3;
+
+    @Test
+    public void buildsSmallTables() {
+        for (int size = 1; size <= 64; size++) {
+            assertPerfect(createPaths(size, new Random(size)));
+        }
+    }
+
+    @Test
+    public void buildsLargeTables() {
+        for (int size : new int[]{40000, 60000, 100000}) {
+            for (int trial = 0; trial < TRIALS; trial++) {
+                assertPerfect(createPaths(size, new Random(31L * size + trial)));
+            }
+        }
+    }
+
+    @Test
+    public void buildsSequentialNames() {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            paths.add("images/image_" + i + ".png");
+        }
+        assertPerfect(paths);
+    }
+
+    private static void assertPerfect(List<String> paths) {
+        String[] displacements = PathHashBuilder.build(paths);
+        int tableSize = PathHash.getTableSize(paths.size());
+        assertTrue(tableSize > paths.size());
+
+        boolean[] taken = new boolean[tableSize];
+        for (String path : paths) {
+            int slot = PathHash.getSlot(path, displacements, tableSize);
+            assertFalse("Collision for " + path, taken[slot]);
+            taken[slot] = true;
+        }
+    }
+
+    private static List<String> createPaths(int size, Random random) {
+        Set<String> paths = new HashSet<>(size * 2);
+        while (paths.size() < size) {
+            StringBuilder path = new StringBuilder();
+            int depth = random.nextInt(4);
+            for (int i = 0; i < depth; i++) {
+                path.append("folder_").append(random.nextInt(50)).append('/');
+            }
+            path.append(Long.toString(random.nextLong() & Long.MAX_VALUE, 36)).append(".png");
+            paths.add(path.toString());
+        }
+        List<String> list = new ArrayList<>(paths);
+        assertEquals(size, list.size());
+        return list;
+    }
+}
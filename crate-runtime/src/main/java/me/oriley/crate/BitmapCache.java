@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Memory cache of decoded bitmaps, bounded by their size in bytes rather than the number of entries. The least
+ * recently used bitmaps are evicted first. Bitmaps are shared by everyone requesting the same asset, so mustn't be
+ * recycled or modified.
+ */
+@SuppressWarnings("unused")
+public final class BitmapCache {
+
+    // Access ordered, so iteration starts from the least recently used
+    @NonNull
+    private final LinkedHashMap<Key, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final int mMaxSize;
+
+    private int mSize;
+
+    private int mHitCount;
+
+    private int mMissCount;
+
+    private int mEvictionCount;
+
+
+    BitmapCache(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+
+    @Nullable
+    synchronized Bitmap get(@NonNull Key key) {
+        Entry entry = mEntries.get(key);
+        if (entry != null) {
+            mHitCount++;
+            return entry.mBitmap;
+        } else {
+            mMissCount++;
+            return null;
+        }
+    }
+
+    synchronized void put(@NonNull Key key, @NonNull Bitmap bitmap) {
+        int size = bitmap.getByteCount();
+        if (size > mMaxSize) {
+            return;
+        }
+
+        Entry previous = mEntries.put(key, new Entry(bitmap, size));
+        if (previous != null) {
+            mSize -= previous.mSize;
+        }
+        mSize += size;
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Makes room for a bitmap of the given size before it's decoded, so the cache and the new bitmap together stay
+     * within the budget.
+     *
+     * @return false if the bitmap is too large to cache at all
+     */
+    synchronized boolean reserve(long size) {
+        if (size > mMaxSize) {
+            return false;
+        } else if (size > 0) {
+            trimToSize((int) (mMaxSize - size));
+        }
+        return true;
+    }
+
+    /**
+     * Evicts the least recently used bitmaps until the cache is no larger than the given size in bytes
+     */
+    public synchronized void trimToSize(int maxSize) {
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (mSize > maxSize && iterator.hasNext()) {
+            mSize -= iterator.next().mSize;
+            iterator.remove();
+            mEvictionCount++;
+        }
+    }
+
+    public void evictAll() {
+        trimToSize(-1);
+    }
+
+    /**
+     * Frees memory in response to {@link ComponentCallbacks2#onTrimMemory(int)}. Everything is evicted when memory is
+     * critical (in the foreground) or the app is likely to be killed soon (in the background), and half the cache
+     * when the UI is hidden or memory is getting low.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(mMaxSize / 2);
+        }
+    }
+
+    /**
+     * @return total size of the cached bitmaps in bytes
+     */
+    public synchronized int getSize() {
+        return mSize;
+    }
+
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized int getCount() {
+        return mEntries.size();
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BitmapCache[size=" + mSize + ", maxSize=" + mMaxSize + ", count=" + mEntries.size() + ", hits="
+                + mHitCount + ", misses=" + mMissCount + ", evictions=" + mEvictionCount + "]";
+    }
+
+    static int getBytesPerPixel(@NonNull Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+
+    private static final class Entry {
+
+        @NonNull
+        final Bitmap mBitmap;
+
+        // Recorded up front, as it can't be measured once the bitmap is recycled
+        final int mSize;
+
+        private Entry(@NonNull Bitmap bitmap, int size) {
+            mBitmap = bitmap;
+            mSize = size;
+        }
+    }
+
+    /**
+     * Identifies a decoded bitmap by its asset path along with the options it was decoded with
+     */
+    static final class Key {
+
+        @NonNull
+        final String mPath;
+
+        @NonNull
+        final Bitmap.Config mConfig;
+
+        final int mSampleSize;
+
+        // Size the sampled image is then scaled to, or 0 if it isn't scaled
+        final int mWidth;
+
+        final int mHeight;
+
+        Key(@NonNull String path, @NonNull Bitmap.Config config) {
+            this(path, config, 1, 0, 0);
+        }
+
+        Key(@NonNull String path, @NonNull Bitmap.Config config, int sampleSize, int width, int height) {
+            mPath = path;
+            mConfig = config;
+            mSampleSize = sampleSize;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        boolean isScaled() {
+            return mWidth > 0 && mHeight > 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            } else if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key) o;
+            return mPath.equals(key.mPath) && mConfig == key.mConfig && mSampleSize == key.mSampleSize
+                    && mWidth == key.mWidth && mHeight == key.mHeight;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mPath.hashCode();
+            result = 31 * result + mConfig.hashCode();
+            result = 31 * result + mSampleSize;
+            result = 31 * result + mWidth;
+            result = 31 * result + mHeight;
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            if (isScaled()) {
+                return mPath + " (" + mConfig + ", " + mWidth + "x" + mHeight + ")";
+            } else if (mSampleSize > 1) {
+                return mPath + " (" + mConfig + ", 1/" + mSampleSize + ")";
+            } else {
+                return mPath + " (" + mConfig + ")";
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pool of released bitmaps to decode new images into with {@link android.graphics.BitmapFactory.Options#inBitmap},
+ * so scrolling through images doesn't allocate a new bitmap for each one. Bitmaps are bucketed by their size in bytes
+ * and the pool is bounded by their total size, evicting (and recycling) the least recently released first.
+ * <p>
+ * From KitKat any bitmap at least as large as the new image can be reused. Before that only bitmaps of exactly the
+ * same size and config can, and only for images decoded at full size.
+ */
+@SuppressWarnings("unused")
+public final class BitmapPool {
+
+    // Avoids tying up a much larger bitmap for a small image, which would leave it unavailable for larger ones
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private static final boolean REUSE_ANY_SIZE = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+
+    // Bitmaps by size in bytes, for finding the smallest one large enough
+    @NonNull
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> mBuckets = new TreeMap<>();
+
+    // Insertion ordered, so iteration starts from the least recently released
+    @NonNull
+    private final LinkedHashMap<Bitmap, Integer> mSizes = new LinkedHashMap<>();
+
+    private final int mMaxSize;
+
+    private int mSize;
+
+    private int mHitCount;
+
+    private int mMissCount;
+
+    private int mEvictionCount;
+
+
+    BitmapPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+
+    /**
+     * Takes a bitmap out of the pool which a new image can be decoded into
+     *
+     * @param width  width of the decoded image, or an upper bound of it from KitKat
+     * @param height height of the decoded image, or an upper bound of it from KitKat
+     * @return a bitmap to decode into, or null if none are suitable
+     */
+    @Nullable
+    synchronized Bitmap get(int width, int height, @NonNull Bitmap.Config config) {
+        int size = width * height * BitmapCache.getBytesPerPixel(config);
+        Bitmap bitmap = null;
+        if (REUSE_ANY_SIZE) {
+            Map.Entry<Integer, ArrayDeque<Bitmap>> bucket = mBuckets.ceilingEntry(size);
+            if (bucket != null && bucket.getKey() <= (long) size * MAX_SIZE_MULTIPLE) {
+                bitmap = bucket.getValue().pollLast();
+                if (bucket.getValue().isEmpty()) {
+                    mBuckets.remove(bucket.getKey());
+                }
+            }
+        } else {
+            ArrayDeque<Bitmap> bucket = mBuckets.get(size);
+            if (bucket != null) {
+                Iterator<Bitmap> iterator = bucket.descendingIterator();
+                while (iterator.hasNext()) {
+                    Bitmap candidate = iterator.next();
+                    if (candidate.getWidth() == width && candidate.getHeight() == height
+                            && candidate.getConfig() == config) {
+                        iterator.remove();
+                        bitmap = candidate;
+                        break;
+                    }
+                }
+                if (bucket.isEmpty()) {
+                    mBuckets.remove(size);
+                }
+            }
+        }
+
+        if (bitmap != null) {
+            mSize -= mSizes.remove(bitmap);
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns a bitmap to the pool once it's no longer used, to be decoded over by a later image. Only mutable
+     * bitmaps can be reused, and bitmaps larger than the pool are recycled straight away.
+     */
+    public synchronized void put(@NonNull Bitmap bitmap) {
+        if (bitmap.isRecycled() || !bitmap.isMutable() || mSizes.containsKey(bitmap)) {
+            return;
+        }
+
+        int size = REUSE_ANY_SIZE ? bitmap.getAllocationByteCount() : bitmap.getByteCount();
+        if (size > mMaxSize) {
+            bitmap.recycle();
+            return;
+        }
+
+        ArrayDeque<Bitmap> bucket = mBuckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>(2);
+            mBuckets.put(size, bucket);
+        }
+        bucket.add(bitmap);
+        mSizes.put(bitmap, size);
+        mSize += size;
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Evicts and recycles the least recently released bitmaps until the pool is no larger than the given size in
+     * bytes
+     */
+    public synchronized void trimToSize(int maxSize) {
+        Iterator<Map.Entry<Bitmap, Integer>> iterator = mSizes.entrySet().iterator();
+        while (mSize > maxSize && iterator.hasNext()) {
+            Map.Entry<Bitmap, Integer> entry = iterator.next();
+            iterator.remove();
+
+            ArrayDeque<Bitmap> bucket = mBuckets.get(entry.getValue());
+            bucket.remove(entry.getKey());
+            if (bucket.isEmpty()) {
+                mBuckets.remove(entry.getValue());
+            }
+
+            mSize -= entry.getValue();
+            mEvictionCount++;
+            entry.getKey().recycle();
+        }
+    }
+
+    public void evictAll() {
+        trimToSize(-1);
+    }
+
+    /**
+     * Frees memory in response to {@link ComponentCallbacks2#onTrimMemory(int)}, in the same way as
+     * {@link BitmapCache#trimMemory(int)}
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(mMaxSize / 2);
+        }
+    }
+
+    /**
+     * @return total size of the pooled bitmaps in bytes
+     */
+    public synchronized int getSize() {
+        return mSize;
+    }
+
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized int getCount() {
+        return mSizes.size();
+    }
+
+    /**
+     * @return number of decodes which reused a pooled bitmap
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return number of decodes which had to allocate a new bitmap
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return fraction of decodes which reused a pooled bitmap, or 0 before the first decode
+     */
+    public synchronized float getHitRate() {
+        int total = mHitCount + mMissCount;
+        return total > 0 ? (float) mHitCount / total : 0;
+    }
+
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BitmapPool[size=" + mSize + ", maxSize=" + mMaxSize + ", count=" + mSizes.size() + ", hits="
+                + mHitCount + ", misses=" + mMissCount + ", evictions=" + mEvictionCount + "]";
+    }
+}
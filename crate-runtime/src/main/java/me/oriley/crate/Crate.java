@@ -19,8 +19,12 @@ package me.oriley.crate;
 import android.content.Context;
 import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
+import android.content.res.Resources;
 import android.graphics.*;
 import android.graphics.drawable.PictureDrawable;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
@@ -28,6 +32,13 @@ import me.oriley.crate.CrateSvg.SvgParseException;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.zip.GZIPInputStream;
 
 @SuppressWarnings("unused")
@@ -35,6 +46,9 @@ public final class Crate {
 
     private static final String TAG = Crate.class.getSimpleName();
 
+    // ARGB_8888, which is what BitmapFactory decodes to unless told otherwise
+    private static final int BYTES_PER_PIXEL = 4;
+
     @NonNull
     private final AssetManager mAssetManager;
 
@@ -49,16 +63,287 @@ public final class Crate {
 
     private final boolean DEBUG;
 
+    @Nullable
+    private volatile AssetIndex mIndex;
 
+    // Assets (or IDs in binary index mode) in path hash slot order, built on first lookup
+    @Nullable
+    private volatile Asset[] mPathTable;
+
+    @Nullable
+    private volatile int[] mPathIds;
+
+    @Nullable
+    private final BitmapCache mBitmapCache;
+
+    @Nullable
+    private final BitmapPool mBitmapPool;
+
+    @Nullable
+    private final PictureCache mPictureCache;
+
+    // Typefaces are never freed by the system, so each font is only created once, by whoever asks for it first
+    @NonNull
+    private final ConcurrentHashMap<String, FutureTask<Typeface>> mTypefaces = new ConcurrentHashMap<>();
+
+
+    /**
+     * Creates a Crate without a bitmap cache, so every bitmap returned is the caller's own, along with a bitmap pool of
+     * a sixteenth of the maximum heap size and an SVG picture cache of a thirty-second
+     */
     public Crate(@NonNull Context context) {
+        this(context, 0);
+    }
+
+    /**
+     * Creates a Crate with a bitmap cache, which is opt-in as cached bitmaps are shared by every caller, so mustn't be
+     * recycled or modified. An eighth of the maximum heap size is a reasonable size.
+     *
+     * @param bitmapCacheBytes maximum size of the decoded bitmaps to keep in memory, or 0 to decode them every time
+     */
+    public Crate(@NonNull Context context, int bitmapCacheBytes) {
+        this(context, bitmapCacheBytes, getHeapFraction(16));
+    }
+
+    /**
+     * @param bitmapCacheBytes maximum size of the decoded bitmaps to keep in memory, or 0 to decode them every time
+     * @param bitmapPoolBytes  maximum size of the released bitmaps to keep for reuse, or 0 to always allocate new ones
+     */
+    public Crate(@NonNull Context context, int bitmapCacheBytes, int bitmapPoolBytes) {
+        this(context, bitmapCacheBytes, bitmapPoolBytes, getHeapFraction(32));
+    }
+
+    /**
+     * @param bitmapCacheBytes  maximum size of the decoded bitmaps to keep in memory, or 0 to decode them every time
+     * @param bitmapPoolBytes   maximum size of the released bitmaps to keep for reuse, or 0 to always allocate new ones
+     * @param pictureCacheBytes maximum size of the SVGs to keep parsed in memory, measured by the size of the files,
+     *                          or 0 to parse them every time
+     */
+    public Crate(@NonNull Context context, int bitmapCacheBytes, int bitmapPoolBytes, int pictureCacheBytes) {
         mAssetManager = context.getApplicationContext().getAssets();
         mDictionary = new CrateDictionary();
+        mBitmapCache = bitmapCacheBytes > 0 ? new BitmapCache(bitmapCacheBytes) : null;
+        mBitmapPool = bitmapPoolBytes > 0 ? new BitmapPool(bitmapPoolBytes) : null;
+        mPictureCache = pictureCacheBytes > 0 ? new PictureCache(pictureCacheBytes) : null;
 
         // Ugly, but helps keep with desired code style
         assets = mDictionary.assets;
         DEBUG = mDictionary.mDebug;
     }
 
+    private static int getHeapFraction(int divisor) {
+        return (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / divisor);
+    }
+
+
+    /**
+     * @return the cache used by {@link #getBitmap(ImageAsset)} and {@link #getSvgBitmap(SvgAsset)}, for its
+     * statistics or to trim it, or null if disabled
+     */
+    @Nullable
+    public BitmapCache getBitmapCache() {
+        return mBitmapCache;
+    }
+
+    /**
+     * @return the pool used by {@link #acquireBitmap(ImageAsset)}, for its statistics or to trim it, or null if
+     * disabled
+     */
+    @Nullable
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    /**
+     * @return the cache used by {@link #getSvgPicture(SvgAsset)}, for its statistics or to trim it, or null if disabled
+     */
+    @Nullable
+    public PictureCache getPictureCache() {
+        return mPictureCache;
+    }
+
+    /**
+     * Frees cached memory, suitable for calling from {@link android.content.ComponentCallbacks2#onTrimMemory(int)}
+     */
+    public void trimMemory(int level) {
+        if (mBitmapCache != null) {
+            mBitmapCache.trimMemory(level);
+        }
+        if (mBitmapPool != null) {
+            mBitmapPool.trimMemory(level);
+        }
+        if (mPictureCache != null) {
+            mPictureCache.trimMemory(level);
+        }
+    }
+
+
+    /**
+     * Returns the binary index of all assets, loading it on first use. Only available when the plugin is configured
+     * with {@code binaryIndex = true}.
+     *
+     * @throws IllegalStateException if the index is missing or invalid
+     */
+    @NonNull
+    public AssetIndex getIndex() {
+        AssetIndex index = mIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = mIndex;
+                if (index == null) {
+                    index = loadIndex();
+                    mIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Creates the {@link Asset} for an ID generated in binary index mode, such as {@code assets.images.BACKGROUND_JPG}
+     */
+    @NonNull
+    public Asset getAsset(int id) {
+        return getIndex().getAsset(id);
+    }
+
+    /**
+     * Creates the {@link Asset}s for a range of IDs, such as {@code assets.images.LIST_START} to
+     * {@code assets.images.LIST_END} for all assets in a folder.
+     *
+     * @param start first ID, inclusive
+     * @param end   last ID, exclusive
+     */
+    @NonNull
+    public List<Asset> getAssets(int start, int end) {
+        AssetIndex index = getIndex();
+        List<Asset> assets = new ArrayList<>(end - start);
+        for (int id = start; id < end; id++) {
+            assets.add(index.getAsset(id));
+        }
+        return assets;
+    }
+
+    /**
+     * Finds the asset with the given path, such as {@code "images/background.jpg"}, in constant time using the hash
+     * built by the plugin. Doesn't allocate once the lookup table is built on first use, other than creating the
+     * {@link Asset} in binary index mode.
+     *
+     * @return the asset, or null if there is no asset with this path
+     */
+    @Nullable
+    public Asset find(@NonNull String path) {
+        if (mDictionary.mBinaryIndex) {
+            int id = findId(path);
+            return id >= 0 ? getAsset(id) : null;
+        }
+
+        if (mDictionary.mPathHash.length == 0) {
+            // No assets, or the plugin couldn't build the hash
+            for (Asset asset : mDictionary.getAllAssets()) {
+                if (asset.mPath.equals(path)) {
+                    return asset;
+                }
+            }
+            return null;
+        }
+
+        Asset[] table = getPathTable();
+        Asset asset = table[PathHash.getSlot(path, mDictionary.mPathHash, table.length)];
+        return asset != null && asset.mPath.equals(path) ? asset : null;
+    }
+
+    /**
+     * Finds the ID of the asset with the given path in binary index mode, without allocating.
+     *
+     * @return the asset ID, or -1 if there is no asset with this path
+     */
+    public int findId(@NonNull String path) {
+        if (mDictionary.mPathHash.length == 0) {
+            // No assets, or the plugin couldn't build the hash
+            AssetIndex index = getIndex();
+            for (int id = 0; id < index.size(); id++) {
+                if (index.matches(id, path)) {
+                    return id;
+                }
+            }
+            return -1;
+        }
+
+        int[] ids = getPathIds();
+        int id = ids[PathHash.getSlot(path, mDictionary.mPathHash, ids.length)];
+        return id >= 0 && getIndex().matches(id, path) ? id : -1;
+    }
+
+    @NonNull
+    private Asset[] getPathTable() {
+        Asset[] table = mPathTable;
+        if (table == null) {
+            synchronized (this) {
+                table = mPathTable;
+                if (table == null) {
+                    List<Asset> allAssets = mDictionary.getAllAssets();
+                    table = new Asset[PathHash.getTableSize(allAssets.size())];
+                    for (Asset asset : allAssets) {
+                        int slot = PathHash.getSlot(asset.mPath, mDictionary.mPathHash, table.length);
+                        if (table[slot] != null) {
+                            throw new IllegalStateException("Crate: Path hash collision for " + asset.mPath);
+                        }
+                        table[slot] = asset;
+                    }
+                    mPathTable = table;
+                }
+            }
+        }
+        return table;
+    }
+
+    @NonNull
+    private int[] getPathIds() {
+        int[] ids = mPathIds;
+        if (ids == null) {
+            AssetIndex index = getIndex();
+            synchronized (this) {
+                ids = mPathIds;
+                if (ids == null) {
+                    // Empty slots hold -1
+                    ids = new int[PathHash.getTableSize(index.size())];
+                    Arrays.fill(ids, -1);
+                    for (int id = 0; id < index.size(); id++) {
+                        int slot = PathHash.getSlot(index.getPath(id), mDictionary.mPathHash, ids.length);
+                        if (ids[slot] >= 0) {
+                            throw new IllegalStateException("Crate: Path hash collision for " + index.getPath(id));
+                        }
+                        ids[slot] = id;
+                    }
+                    mPathIds = ids;
+                }
+            }
+        }
+        return ids;
+    }
+
+    @NonNull
+    private AssetIndex loadIndex() {
+        long startMillis = SystemClock.uptimeMillis();
+        try {
+            // Buffer mode reads (or maps) the whole file at once, which is all the index does anyway
+            InputStream stream = mAssetManager.open(AssetIndex.FILE_NAME, AssetManager.ACCESS_BUFFER);
+            //noinspection TryFinallyCanBeTryWithResources
+            try {
+                AssetIndex index = AssetIndex.read(stream);
+                if (DEBUG) Log.d(TAG, "Loaded index of " + index.size() + " assets in " +
+                        (SystemClock.uptimeMillis() - startMillis) + "ms");
+                return index;
+            } finally {
+                //noinspection ThrowFromFinallyBlock
+                stream.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to load asset index, check binaryIndex is enabled in the crate extension", e);
+            throw new IllegalStateException("Crate: Unable to load asset index", e);
+        }
+    }
 
     @NonNull
     public InputStream open(@NonNull Asset asset) throws IOException {
@@ -67,8 +352,27 @@ public final class Crate {
 
     @NonNull
     public InputStream open(@NonNull Asset asset, int mode) throws IOException {
-        InputStream stream = mAssetManager.open(asset.getPath(), mode);
-        if (asset.isGzipped()) {
+        return open(asset.mPath, asset.mGzipped, mode);
+    }
+
+    /**
+     * Opens an asset by ID in binary index mode, without creating an {@link Asset}
+     */
+    @NonNull
+    public InputStream open(int id) throws IOException {
+        return open(id, AssetManager.ACCESS_STREAMING);
+    }
+
+    @NonNull
+    public InputStream open(int id, int mode) throws IOException {
+        AssetIndex index = getIndex();
+        return open(index.getPath(id), index.isGzipped(id), mode);
+    }
+
+    @NonNull
+    private InputStream open(@NonNull String path, boolean gzipped, int mode) throws IOException {
+        InputStream stream = mAssetManager.open(path, mode);
+        if (gzipped) {
             stream = new GZIPInputStream(stream);
         }
         return stream;
@@ -79,15 +383,349 @@ public final class Crate {
         return mAssetManager.openFd(asset.getPath());
     }
 
+    @NonNull
+    public final AssetFileDescriptor openFd(int id) throws IOException {
+        return mAssetManager.openFd(getIndex().getPath(id));
+    }
+
+    /**
+     * Decodes an image. If the bitmap cache is enabled, it's returned from the cache if already decoded, and is shared
+     * with every other caller, so mustn't be recycled or modified.
+     */
     @Nullable
     public Bitmap getBitmap(@NonNull ImageAsset imageAsset) {
-        String key = imageAsset.mPath;
+        return getBitmap(imageAsset, 0, 0, ScaleMode.SAMPLE);
+    }
+
+    /**
+     * Decodes an image by ID in binary index mode, such as {@code assets.images.BACKGROUND_JPG}
+     */
+    @Nullable
+    public Bitmap getBitmap(int id) {
+        return getBitmap(id, 0, 0, ScaleMode.SAMPLE);
+    }
+
+    /**
+     * Decodes an image at the size it will be shown at, rather than at full resolution. The sample size and scale
+     * are worked out from the dimensions found at compile time, so the image is only read once. Each size is cached
+     * separately when the bitmap cache is enabled, and images are never scaled up.
+     *
+     * @param reqWidth  width in pixels, or 0 to only constrain the height
+     * @param reqHeight height in pixels, or 0 to only constrain the width
+     */
+    @Nullable
+    public Bitmap getBitmap(@NonNull ImageAsset imageAsset,
+                            int reqWidth,
+                            int reqHeight,
+                            @NonNull ScaleMode scaleMode) {
+        return getBitmap(imageAsset.mPath, imageAsset.mGzipped, imageAsset.getWidth(), imageAsset.getHeight(),
+                reqWidth, reqHeight, scaleMode);
+    }
+
+    /**
+     * Decodes an image by ID in binary index mode at the size it will be shown at
+     *
+     * @see #getBitmap(ImageAsset, int, int, ScaleMode)
+     */
+    @Nullable
+    public Bitmap getBitmap(int id, int reqWidth, int reqHeight, @NonNull ScaleMode scaleMode) {
+        AssetIndex index = getIndex();
+        return getBitmap(index.getPath(id), index.isGzipped(id), index.getWidth(id), index.getHeight(id),
+                reqWidth, reqHeight, scaleMode);
+    }
+
+    /**
+     * Decodes an image into a bitmap owned by the caller, reusing a released bitmap from the pool where possible
+     * rather than allocating a new one. Bypasses the bitmap cache. Pass the bitmap to {@link #releaseBitmap(Bitmap)}
+     * once it's no longer shown, such as when a list item is recycled.
+     */
+    @Nullable
+    public Bitmap acquireBitmap(@NonNull ImageAsset imageAsset) {
+        return acquireBitmap(imageAsset, 0, 0, ScaleMode.SAMPLE);
+    }
+
+    /**
+     * Decodes an image by ID in binary index mode into a bitmap owned by the caller
+     *
+     * @see #acquireBitmap(ImageAsset)
+     */
+    @Nullable
+    public Bitmap acquireBitmap(int id) {
+        return acquireBitmap(id, 0, 0, ScaleMode.SAMPLE);
+    }
+
+    /**
+     * Decodes an image at the size it will be shown at into a bitmap owned by the caller
+     *
+     * @see #acquireBitmap(ImageAsset)
+     * @see #getBitmap(ImageAsset, int, int, ScaleMode)
+     */
+    @Nullable
+    public Bitmap acquireBitmap(@NonNull ImageAsset imageAsset,
+                                int reqWidth,
+                                int reqHeight,
+                                @NonNull ScaleMode scaleMode) {
+        return acquireBitmap(imageAsset.mPath, imageAsset.mGzipped, imageAsset.getWidth(), imageAsset.getHeight(),
+                reqWidth, reqHeight, scaleMode);
+    }
+
+    /**
+     * Decodes an image by ID in binary index mode at the size it will be shown at into a bitmap owned by the caller
+     *
+     * @see #acquireBitmap(ImageAsset)
+     * @see #getBitmap(ImageAsset, int, int, ScaleMode)
+     */
+    @Nullable
+    public Bitmap acquireBitmap(int id, int reqWidth, int reqHeight, @NonNull ScaleMode scaleMode) {
+        AssetIndex index = getIndex();
+        return acquireBitmap(index.getPath(id), index.isGzipped(id), index.getWidth(id), index.getHeight(id),
+                reqWidth, reqHeight, scaleMode);
+    }
+
+    /**
+     * Returns a bitmap from {@link #acquireBitmap(ImageAsset)} to the pool, to be decoded over by a later image. The
+     * bitmap mustn't be used again afterwards. Does nothing if the pool is disabled.
+     */
+    public void releaseBitmap(@NonNull Bitmap bitmap) {
+        if (mBitmapPool != null) {
+            mBitmapPool.put(bitmap);
+        }
+    }
+
+    /**
+     * @param width  width of the image known at compile time, or 0 if unknown
+     * @param height height of the image known at compile time, or 0 if unknown
+     */
+    @Nullable
+    private Bitmap getBitmap(@NonNull String path,
+                             boolean gzipped,
+                             int width,
+                             int height,
+                             int reqWidth,
+                             int reqHeight,
+                             @NonNull ScaleMode scaleMode) {
+        if ((width <= 0 || height <= 0) && (reqWidth > 0 || reqHeight > 0)) {
+            // Couldn't be probed at compile time, so this costs an extra read of the header
+            BitmapFactory.Options bounds = decodeBounds(path, gzipped);
+            width = bounds.outWidth;
+            height = bounds.outHeight;
+        }
+
+        BitmapCache.Key key = createKey(path, width, height, reqWidth, reqHeight, scaleMode);
+        BitmapCache cache = mBitmapCache;
+        if (cache == null) {
+            return decodeBitmap(key, gzipped, width, height, false, null);
+        }
+
+        Bitmap bitmap = cache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        // Dimensions are known up front, so space is made before decoding rather than after
+        if (!cache.reserve(getByteCount(key, width, height))) {
+            if (DEBUG) Log.d(TAG, "Bitmap too large to cache for key: " + key);
+            return decodeBitmap(key, gzipped, width, height, false, null);
+        }
+
+        bitmap = decodeBitmap(key, gzipped, width, height, false, null);
+        if (bitmap != null) {
+            cache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * @param width  width of the image known at compile time, or 0 if unknown
+     * @param height height of the image known at compile time, or 0 if unknown
+     */
+    @Nullable
+    private Bitmap acquireBitmap(@NonNull String path,
+                                 boolean gzipped,
+                                 int width,
+                                 int height,
+                                 int reqWidth,
+                                 int reqHeight,
+                                 @NonNull ScaleMode scaleMode) {
+        if ((width <= 0 || height <= 0) && (reqWidth > 0 || reqHeight > 0)) {
+            BitmapFactory.Options bounds = decodeBounds(path, gzipped);
+            width = bounds.outWidth;
+            height = bounds.outHeight;
+        }
+
+        BitmapCache.Key key = createKey(path, width, height, reqWidth, reqHeight, scaleMode);
+        BitmapPool pool = mBitmapPool;
+        Bitmap reusable = pool != null ? getReusableBitmap(pool, key, width, height) : null;
+        if (reusable == null) {
+            return decodeBitmap(key, gzipped, width, height, pool != null, null);
+        }
+
+        try {
+            Bitmap bitmap = decodeBitmap(key, gzipped, width, height, true, reusable);
+            if (bitmap == null) {
+                pool.put(reusable);
+            }
+            return bitmap;
+        } catch (IllegalArgumentException e) {
+            // Before KitKat only JPEG and PNG images can be decoded into an existing bitmap
+            if (DEBUG) Log.d(TAG, "Unable to reuse bitmap for key: " + key, e);
+            pool.put(reusable);
+            return decodeBitmap(key, gzipped, width, height, true, null);
+        }
+    }
+
+    /**
+     * Takes a bitmap the image can be decoded into from the pool. As the size of the decoded image is known up front,
+     * this doesn't need a bounds decode first.
+     */
+    @Nullable
+    private static Bitmap getReusableBitmap(@NonNull BitmapPool pool,
+                                            @NonNull BitmapCache.Key key,
+                                            int width,
+                                            int height) {
+        if (width <= 0 || height <= 0) {
+            return null;
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return pool.get(getMaxDecodedLength(width, key, width, height),
+                    getMaxDecodedLength(height, key, width, height), key.mConfig);
+        } else if (key.mSampleSize == 1 && !key.isScaled()) {
+            return pool.get(width, height, key.mConfig);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * @return largest length a side of the image can be decoded at, as some formats round sampled sizes up and
+     * others down
+     */
+    private static int getMaxDecodedLength(int length, @NonNull BitmapCache.Key key, int width, int height) {
+        int sampled = (length + key.mSampleSize - 1) / key.mSampleSize;
+        if (!key.isScaled()) {
+            return sampled;
+        }
+        float scale = (float) getTargetDensity(key, width, height) / getDensity(width, height);
+        return (int) (sampled * scale + 0.5f);
+    }
+
+    // The decoder scales by inTargetDensity / inDensity after sampling, in the same pass. Measured along the longer
+    // side for precision, with the sample size folded in so the ratio is from the full size.
+    private static int getDensity(int width, int height) {
+        return Math.max(width, height);
+    }
+
+    private static int getTargetDensity(@NonNull BitmapCache.Key key, int width, int height) {
+        return (width >= height ? key.mWidth : key.mHeight) * key.mSampleSize;
+    }
+
+    /**
+     * Works out how to decode an image of the given size for the requested size. Sizes which end up decoding the
+     * same way share a key, and so a cache entry.
+     */
+    @NonNull
+    static BitmapCache.Key createKey(@NonNull String path,
+                                     int width,
+                                     int height,
+                                     int reqWidth,
+                                     int reqHeight,
+                                     @NonNull ScaleMode scaleMode) {
+        Bitmap.Config config = Bitmap.Config.ARGB_8888;
+        if (width <= 0 || height <= 0 || (reqWidth <= 0 && reqHeight <= 0)) {
+            return new BitmapCache.Key(path, config);
+        } else if (scaleMode == ScaleMode.SAMPLE) {
+            return new BitmapCache.Key(path, config, getSampleSize(width, height, reqWidth, reqHeight), 0, 0);
+        }
+
+        float scale;
+        if (reqWidth <= 0) {
+            scale = (float) reqHeight / height;
+        } else if (reqHeight <= 0) {
+            scale = (float) reqWidth / width;
+        } else if (scaleMode == ScaleMode.FIT) {
+            scale = Math.min((float) reqWidth / width, (float) reqHeight / height);
+        } else {
+            scale = Math.max((float) reqWidth / width, (float) reqHeight / height);
+        }
+        if (scale >= 1) {
+            return new BitmapCache.Key(path, config);
+        }
+
+        int targetWidth = Math.max(1, Math.round(width * scale));
+        int targetHeight = Math.max(1, Math.round(height * scale));
+        return new BitmapCache.Key(path, config, getSampleSize(width, height, targetWidth, targetHeight),
+                targetWidth, targetHeight);
+    }
+
+    /**
+     * @return the largest power of two which keeps the sampled image at least as large as requested
+     */
+    private static int getSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int sampleSize = 1;
+        while ((reqWidth <= 0 || width / (sampleSize * 2) >= reqWidth)
+                && (reqHeight <= 0 || height / (sampleSize * 2) >= reqHeight)) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static long getByteCount(@NonNull BitmapCache.Key key, int width, int height) {
+        if (key.isScaled()) {
+            return (long) key.mWidth * key.mHeight * BYTES_PER_PIXEL;
+        }
+        int sampleSize = key.mSampleSize;
+        return (long) ((width + sampleSize - 1) / sampleSize) * ((height + sampleSize - 1) / sampleSize)
+                * BYTES_PER_PIXEL;
+    }
+
+    @NonNull
+    private BitmapFactory.Options decodeBounds(@NonNull String path, boolean gzipped) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try {
+            InputStream stream = open(path, gzipped, AssetManager.ACCESS_STREAMING);
+            //noinspection TryFinallyCanBeTryWithResources
+            try {
+                BitmapFactory.decodeStream(stream, null, options);
+            } finally {
+                //noinspection ThrowFromFinallyBlock
+                stream.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read bitmap bounds for key: " + path, e);
+        }
+        return options;
+    }
+
+    /**
+     * @param mutable  whether to decode a mutable bitmap, which can be pooled once released
+     * @param inBitmap pooled bitmap to decode into, if mutable
+     */
+    @Nullable
+    private Bitmap decodeBitmap(@NonNull BitmapCache.Key key,
+                                boolean gzipped,
+                                int width,
+                                int height,
+                                boolean mutable,
+                                @Nullable Bitmap inBitmap) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = key.mConfig;
+        options.inSampleSize = key.mSampleSize;
+        if (key.isScaled()) {
+            options.inScaled = true;
+            options.inDensity = getDensity(width, height);
+            options.inTargetDensity = getTargetDensity(key, width, height);
+        }
+        if (mutable) {
+            options.inMutable = true;
+            options.inBitmap = inBitmap;
+        }
+
         Bitmap bitmap = null;
         try {
-            InputStream stream = open(imageAsset);
+            InputStream stream = open(key.mPath, gzipped, AssetManager.ACCESS_STREAMING);
             //noinspection TryFinallyCanBeTryWithResources
             try {
-                bitmap = BitmapFactory.decodeStream(stream);
+                bitmap = BitmapFactory.decodeStream(stream, null, options);
             } finally {
                 //noinspection ThrowFromFinallyBlock
                 stream.close();
@@ -96,12 +734,124 @@ public final class Crate {
             Log.e(TAG, "Failed to load bitmap for key: " + key, e);
             e.printStackTrace();
         }
+
+        if (bitmap != null && key.isScaled()) {
+            // Otherwise it keeps the made up target density, and would be scaled again when drawn
+            bitmap.setDensity(Resources.getSystem().getDisplayMetrics().densityDpi);
+        }
         return bitmap;
     }
 
+    /**
+     * Returns the typeface for a font, creating it on first use. Each font is only created once for the life of the
+     * Crate, as repeatedly creating typefaces is slow and leaks native memory on some Android versions.
+     */
     @Nullable
     public Typeface getTypeface(@NonNull FontAsset fontAsset) {
-        String key = fontAsset.mPath;
+        return getTypeface(fontAsset.mPath);
+    }
+
+    /**
+     * Returns the typeface for a font by ID in binary index mode
+     */
+    @Nullable
+    public Typeface getTypeface(int id) {
+        return getTypeface(getIndex().getPath(id));
+    }
+
+    /**
+     * Creates the typefaces for every font on a background thread, such as at startup, so later calls to
+     * {@link #getTypeface(FontAsset)} return straight away (or wait for the font being loaded rather than loading it
+     * again).
+     * <p>
+     * Finding the fonts goes through every asset, which in lazy folder mode creates the whole dictionary tree. In that
+     * mode, pass the fonts to {@link #preloadTypefaces(List)} instead, such as {@code assets.fonts.LIST}.
+     */
+    public void preloadTypefaces() {
+        startPreload(null);
+    }
+
+    /**
+     * Creates the typefaces for the given fonts on a background thread, such as {@code assets.fonts.LIST}
+     */
+    public void preloadTypefaces(@NonNull List<FontAsset> fontAssets) {
+        List<String> paths = new ArrayList<>(fontAssets.size());
+        for (FontAsset fontAsset : fontAssets) {
+            paths.add(fontAsset.mPath);
+        }
+        startPreload(paths);
+    }
+
+    private void startPreload(@Nullable final List<String> paths) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                long startMillis = SystemClock.uptimeMillis();
+                List<String> fontPaths = paths != null ? paths : getFontPaths();
+                for (String path : fontPaths) {
+                    getTypeface(path);
+                }
+                if (DEBUG) Log.d(TAG, "Preloaded " + fontPaths.size() + " typefaces in " +
+                        (SystemClock.uptimeMillis() - startMillis) + "ms");
+            }
+        }, "Crate typeface preload").start();
+    }
+
+    @NonNull
+    private List<String> getFontPaths() {
+        List<String> paths = new ArrayList<>();
+        if (mDictionary.mBinaryIndex) {
+            AssetIndex index = getIndex();
+            for (int id = 0; id < index.size(); id++) {
+                if (index.getType(id) == AssetIndex.TYPE_FONT) {
+                    paths.add(index.getPath(id));
+                }
+            }
+        } else {
+            for (Asset asset : mDictionary.getAllAssets()) {
+                if (asset instanceof FontAsset) {
+                    paths.add(asset.mPath);
+                }
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the typeface for a font, creating it on first use. Concurrent callers for the same font wait for a
+     * single load rather than each creating their own.
+     */
+    @Nullable
+    private Typeface getTypeface(@NonNull final String key) {
+        FutureTask<Typeface> task = mTypefaces.get(key);
+        if (task == null) {
+            FutureTask<Typeface> newTask = new FutureTask<>(new Callable<Typeface>() {
+                @Override
+                public Typeface call() {
+                    return createTypeface(key);
+                }
+            });
+            task = mTypefaces.putIfAbsent(key, newTask);
+            if (task == null) {
+                task = newTask;
+                task.run();
+            }
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Failed to load typeface for key: " + key, e.getCause());
+            return null;
+        }
+    }
+
+    @Nullable
+    private Typeface createTypeface(@NonNull String key) {
         Typeface typeface = null;
         try {
             typeface = Typeface.createFromAsset(mAssetManager, key);
@@ -114,24 +864,95 @@ public final class Crate {
 
     @NonNull
     public Bitmap createSvgBitmap(@NonNull Picture picture) {
-        int desiredWidth = picture.getWidth();
-        int desiredHeight = picture.getHeight();
-        Bitmap bitmap = Bitmap.createBitmap(desiredWidth, desiredHeight, Bitmap.Config.ARGB_8888);
+        return createSvgBitmap(picture, picture.getWidth(), picture.getHeight(), Bitmap.Config.ARGB_8888);
+    }
+
+    @NonNull
+    public Bitmap createSvgBitmap(@NonNull Picture picture, int width, int height, @NonNull Bitmap.Config config) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, config);
         Canvas canvas = new Canvas(bitmap);
-        canvas.drawPicture(picture, new Rect(0, 0, desiredWidth, desiredHeight));
+        canvas.drawPicture(picture, new Rect(0, 0, width, height));
         return bitmap;
     }
 
+    /**
+     * Renders an SVG at its own size. If the bitmap cache is enabled, it's returned from the cache if already rendered,
+     * and is shared with every other caller, so mustn't be recycled or modified.
+     */
     @Nullable
     public Bitmap getSvgBitmap(@NonNull SvgAsset svgAsset) {
-        String key = svgAsset.mPath;
-        Picture picture = getSvgPicture(svgAsset);
+        return getSvgBitmap(svgAsset.mPath, svgAsset.mGzipped, 0, 0, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Renders an SVG by ID in binary index mode
+     */
+    @Nullable
+    public Bitmap getSvgBitmap(int id) {
+        AssetIndex index = getIndex();
+        return getSvgBitmap(index.getPath(id), index.isGzipped(id), 0, 0, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Renders an SVG at the given size, or returns it from the bitmap cache if already rendered at this size and
+     * config. Each size is rendered from the same cached {@link Picture}, so the SVG is only parsed once.
+     */
+    @Nullable
+    public Bitmap getSvgBitmap(@NonNull SvgAsset svgAsset, int width, int height, @NonNull Bitmap.Config config) {
+        return getSvgBitmap(svgAsset.mPath, svgAsset.mGzipped, width, height, config);
+    }
+
+    /**
+     * Renders an SVG by ID in binary index mode at the given size
+     *
+     * @see #getSvgBitmap(SvgAsset, int, int, Bitmap.Config)
+     */
+    @Nullable
+    public Bitmap getSvgBitmap(int id, int width, int height, @NonNull Bitmap.Config config) {
+        AssetIndex index = getIndex();
+        return getSvgBitmap(index.getPath(id), index.isGzipped(id), width, height, config);
+    }
+
+    /**
+     * @param width  width to render at, or 0 to use the size of the SVG
+     * @param height height to render at, or 0 to use the size of the SVG
+     */
+    @Nullable
+    private Bitmap getSvgBitmap(@NonNull String key,
+                                boolean gzipped,
+                                int width,
+                                int height,
+                                @NonNull Bitmap.Config config) {
+        Picture picture = getSvgPicture(key, gzipped);
         if (picture == null) {
             if (DEBUG) Log.d(TAG, "Picture is null for key: " + key);
             return null;
         }
 
-        return createSvgBitmap(picture);
+        if (width <= 0 || height <= 0) {
+            width = picture.getWidth();
+            height = picture.getHeight();
+        }
+
+        BitmapCache cache = mBitmapCache;
+        if (cache == null) {
+            return createSvgBitmap(picture, width, height, config);
+        }
+
+        BitmapCache.Key cacheKey = new BitmapCache.Key(key, config, 1, width, height);
+        Bitmap bitmap = cache.get(cacheKey);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        if (!cache.reserve((long) width * height * BitmapCache.getBytesPerPixel(config))) {
+            if (DEBUG) Log.d(TAG, "Bitmap too large to cache for key: " + cacheKey);
+            return createSvgBitmap(picture, width, height, config);
+        }
+
+        bitmap = createSvgBitmap(picture, width, height, config);
+        cache.put(cacheKey, bitmap);
+        return bitmap;
     }
 
     @Nullable
@@ -140,12 +961,43 @@ public final class Crate {
         return picture != null ? new PictureDrawable(picture) : null;
     }
 
+    /**
+     * Creates a drawable for an SVG by ID in binary index mode
+     */
+    @Nullable
+    public PictureDrawable getSvgDrawable(int id) {
+        Picture picture = getSvgPicture(id);
+        return picture != null ? new PictureDrawable(picture) : null;
+    }
+
+    /**
+     * Parses an SVG, or returns it from the picture cache if already parsed. Cached pictures are shared, so mustn't
+     * be recorded over.
+     */
     @Nullable
     public Picture getSvgPicture(@NonNull SvgAsset svgAsset) {
-        String key = svgAsset.getPath();
-        Picture picture = null;
+        return getSvgPicture(svgAsset.mPath, svgAsset.mGzipped);
+    }
+
+    /**
+     * Parses an SVG by ID in binary index mode
+     */
+    @Nullable
+    public Picture getSvgPicture(int id) {
+        AssetIndex index = getIndex();
+        return getSvgPicture(index.getPath(id), index.isGzipped(id));
+    }
+
+    @Nullable
+    private Picture getSvgPicture(@NonNull String key, boolean gzipped) {
+        PictureCache cache = mPictureCache;
+        Picture picture = cache != null ? cache.get(key) : null;
+        if (picture != null) {
+            return picture;
+        }
+
         try {
-            InputStream stream = open(svgAsset);
+            CountingInputStream stream = new CountingInputStream(open(key, gzipped, AssetManager.ACCESS_STREAMING));
             //noinspection TryFinallyCanBeTryWithResources
             try {
                 picture = mSvgParser.parseSvg(stream);
@@ -153,6 +1005,10 @@ public final class Crate {
                 //noinspection ThrowFromFinallyBlock
                 stream.close();
             }
+
+            if (picture != null && cache != null) {
+                cache.put(key, picture, (int) Math.min(Integer.MAX_VALUE, stream.getCount()));
+            }
         } catch (IOException | SvgParseException e) {
             Log.e(TAG, "Failed to load SVG for key: " + key, e);
             e.printStackTrace();
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Picture;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Memory cache of parsed SVGs, so an SVG shown at several sizes or in several places is only parsed once. As the
+ * memory used by a {@link Picture} can't be measured, each is counted as the size of the SVG it was parsed from, which
+ * is usually larger than the drawing commands it records. The least recently used pictures are evicted first.
+ */
+@SuppressWarnings("unused")
+public final class PictureCache {
+
+    // Access ordered, so iteration starts from the least recently used
+    @NonNull
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final int mMaxSize;
+
+    private int mSize;
+
+    private int mHitCount;
+
+    private int mMissCount;
+
+    private int mEvictionCount;
+
+
+    PictureCache(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+
+    @Nullable
+    synchronized Picture get(@NonNull String path) {
+        Entry entry = mEntries.get(path);
+        if (entry != null) {
+            mHitCount++;
+            return entry.mPicture;
+        } else {
+            mMissCount++;
+            return null;
+        }
+    }
+
+    /**
+     * @param size estimated size of the picture in bytes
+     */
+    synchronized void put(@NonNull String path, @NonNull Picture picture, int size) {
+        if (size > mMaxSize) {
+            return;
+        }
+
+        Entry previous = mEntries.put(path, new Entry(picture, size));
+        if (previous != null) {
+            mSize -= previous.mSize;
+        }
+        mSize += size;
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Evicts the least recently used pictures until the cache is no larger than the given size in bytes
+     */
+    public synchronized void trimToSize(int maxSize) {
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (mSize > maxSize && iterator.hasNext()) {
+            mSize -= iterator.next().mSize;
+            iterator.remove();
+            mEvictionCount++;
+        }
+    }
+
+    public void evictAll() {
+        trimToSize(-1);
+    }
+
+    /**
+     * Frees memory in response to {@link ComponentCallbacks2#onTrimMemory(int)}, in the same way as
+     * {@link BitmapCache#trimMemory(int)}
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(mMaxSize / 2);
+        }
+    }
+
+    /**
+     * @return estimated total size of the cached pictures in bytes
+     */
+    public synchronized int getSize() {
+        return mSize;
+    }
+
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized int getCount() {
+        return mEntries.size();
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PictureCache[size=" + mSize + ", maxSize=" + mMaxSize + ", count=" + mEntries.size() + ", hits="
+                + mHitCount + ", misses=" + mMissCount + ", evictions=" + mEvictionCount + "]";
+    }
+
+    private static final class Entry {
+
+        @NonNull
+        final Picture mPicture;
+
+        final int mSize;
+
+        private Entry(@NonNull Picture picture, int size) {
+            mPicture = picture;
+            mSize = size;
+        }
+    }
+}
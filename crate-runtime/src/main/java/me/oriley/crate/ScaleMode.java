@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 Kane O'Riley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package me.oriley.crate;
+
+/**
+ * How {@link Crate#getBitmap(ImageAsset, int, int, ScaleMode)} scales an image to the requested size. Images are
+ * never scaled up, and the aspect ratio is always kept.
+ */
+public enum ScaleMode {
+
+    /**
+     * Subsample by the largest power of two which keeps the image at least as large as requested. The cheapest to
+     * decode, but the result can be up to twice the requested size.
+     */
+    SAMPLE,
+
+    /**
+     * Scale to exactly fit within the requested size, so one side matches and the other is no larger
+     */
+    FIT,
+
+    /**
+     * Scale to exactly cover the requested size, so one side matches and the other is no smaller (as needed to
+     * center crop)
+     */
+    FILL
+}
@@ -34,6 +34,21 @@ public class CrateApplication extends Application {
         sInstance = this;
     }
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        Crate crate = getCrate();
+        crate.preloadTypefaces(crate.assets.fonts.LIST);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (mCrate != null) {
+            mCrate.trimMemory(level);
+        }
+    }
+
     @NonNull
     public static Crate getCrate() {
         if (sInstance.mCrate == null) {